@@ -0,0 +1,503 @@
+// == IMPORTS =======================
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.DataLine;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.SourceDataLine;
+import javax.sound.sampled.UnsupportedAudioFileException;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+// == CLASS =======================
+// AUDIO PLAYER | Streams wav files to the sound device one after another, from a queue.
+//
+// A track is never loaded whole: a reader thread decodes it into a small ring buffer, and the playback thread feeds
+// the sound device from that buffer, so a slow disk does not stutter the sound and a long track does not fill the
+// heap. There is one sound device, so every session shares the one player.
+public class AudioPlayer {
+
+    // -- CONSTANT / UTILITY VARIABLES ------
+
+    // About 1.5 seconds of CD-quality sound between the reader and the sound device.
+    static final int RING_BUFFER_BYTES = 256 * 1024;
+    static final int CHUNK_BYTES = 16 * 1024;
+
+    private static final AudioPlayer PLAYER = new AudioPlayer();
+
+    // -- OBJECT FIELDS ---------------------
+
+    private final Deque<Track> queue = new ArrayDeque<>();
+    private Track currentTrack;
+    private boolean paused, skipRequested;
+    private Thread playbackThread;
+
+    // -- COMMAND REGISTRATION ----------------
+
+    static void registerCommands(CommandRegistry registry) {
+        registry.register(Command.of("play", 1, false, false,
+                "[ play (file_name) | Plays an audio file (only supports wav). ]",
+                (terminal, tokenizedCommand) -> PLAYER.play(terminal, resolve(terminal, tokenizedCommand[1]))));
+
+        registry.register(Command.of("stop", 0, false, false,
+                "[ stop (none) | Stops playing audio if there is anything playing, and empties the queue. ]",
+                (terminal, tokenizedCommand) -> PLAYER.stop(terminal)));
+
+        registry.register(Command.of("queue", 0, false, false,
+                "[ queue (none, add + file_name, clear) | Shows what is playing and what plays next; add puts a wav file at the end, clear empties it. ]",
+                (terminal, tokenizedCommand) -> {
+                    if (tokenizedCommand.length == 1) {
+                        PLAYER.printQueue(terminal);
+                    } else if (tokenizedCommand[1].equals("add") && tokenizedCommand.length > 2) {
+                        PLAYER.enqueue(terminal, resolve(terminal, tokenizedCommand[2]));
+                    } else if (tokenizedCommand[1].equals("clear")) {
+                        PLAYER.clearQueue(terminal);
+                    } else {
+                        throw new IndexOutOfBoundsException();
+                    }
+                }));
+
+        registry.register(Command.of("next", 0, false, false,
+                "[ next (none) | Skips to the next track in the queue. ]",
+                (terminal, tokenizedCommand) -> PLAYER.next(terminal)));
+
+        registry.register(Command.of("pause", 0, false, false,
+                "[ pause (none) | Pauses the track that is playing. ]",
+                (terminal, tokenizedCommand) -> PLAYER.setPaused(terminal, true)));
+
+        registry.register(Command.of("resume", 0, false, false,
+                "[ resume (none) | Resumes the paused track. ]",
+                (terminal, tokenizedCommand) -> PLAYER.setPaused(terminal, false)));
+    }
+
+    // -- PLAYER METHODS ----------------------
+
+    private void play(Terminal terminal, Path file) throws IOException {
+        Track track = openTrack(terminal, file);
+        if (track == null) {
+            return;
+        }
+
+        synchronized (this) {
+            if (isBusy()) {
+                terminal.printError("There is already something being played. Use \"stop\" to stop playing it, or \"queue add\" to play this after it.");
+                return;
+            }
+            queue.add(track);
+            startPlaybackThread();
+            notifyAll();
+        }
+        terminal.getOutput().println("Started playing " + track + ".");
+    }
+
+    private void enqueue(Terminal terminal, Path file) throws IOException {
+        Track track = openTrack(terminal, file);
+        if (track == null) {
+            return;
+        }
+
+        boolean startsNow;
+        synchronized (this) {
+            startsNow = !isBusy();
+            queue.add(track);
+            startPlaybackThread();
+            notifyAll();
+        }
+        terminal.getOutput().println((startsNow ? "Started playing " : "Queued ") + track + ".");
+    }
+
+    private synchronized void stop(Terminal terminal) {
+        if (!isBusy()) {
+            terminal.printError("Nothing is currently playing.");
+            return;
+        }
+        queue.clear();
+        skipRequested = true;
+        notifyAll();
+    }
+
+    private synchronized void next(Terminal terminal) {
+        if (currentTrack == null) {
+            terminal.printError("Nothing is currently playing.");
+            return;
+        }
+        terminal.getOutput().println("Skipped " + currentTrack + (queue.isEmpty() ? "; the queue is empty." : "; next up: " + queue.peek() + "."));
+        skipRequested = true;
+        notifyAll();
+    }
+
+    private synchronized void setPaused(Terminal terminal, boolean pause) {
+        if (currentTrack == null) {
+            terminal.printError("Nothing is currently playing.");
+            return;
+        }
+        if (paused == pause) {
+            terminal.printError(pause ? "The track is already paused." : "The track is not paused.");
+            return;
+        }
+        paused = pause;
+        notifyAll();
+        terminal.getOutput().println((pause ? "Paused " : "Resumed ") + currentTrack + ".");
+    }
+
+    private synchronized void clearQueue(Terminal terminal) {
+        terminal.getOutput().println("Removed " + queue.size() + " track(s) from the queue.");
+        queue.clear();
+    }
+
+    private synchronized void printQueue(Terminal terminal) {
+        if (!isBusy()) {
+            terminal.getOutput().println("Nothing is playing, and the queue is empty.");
+            return;
+        }
+        if (currentTrack != null) {
+            terminal.getOutput().println((paused ? "Paused:  " : "Playing: ") + currentTrack);
+        }
+        int position = 1;
+        for (Track track : queue) {
+            terminal.getOutput().println(position++ + ". " + track);
+        }
+    }
+
+    // -- PLAYBACK METHODS --------------------
+
+    // Runs on the playback thread: plays the queued tracks one by one, then waits for more.
+    private void playQueuedTracks() {
+        while (true) {
+            Track track;
+            synchronized (this) {
+                while (queue.isEmpty()) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                track = queue.poll();
+                currentTrack = track;
+                paused = false;
+                skipRequested = false;
+            }
+
+            try {
+                playTrack(track);
+            } catch (IOException | UnsupportedAudioFileException | LineUnavailableException | RuntimeException e) {
+                // The track became unplayable since it was queued (ex. deleted, or the device was taken); go on with the next.
+            } catch (InterruptedException e) {
+                return;
+            } finally {
+                synchronized (this) {
+                    currentTrack = null;
+                }
+            }
+        }
+    }
+
+    // Starts the reader on the track, then feeds the sound device from the ring buffer until the track ends or is skipped.
+    private void playTrack(Track track) throws IOException, UnsupportedAudioFileException, LineUnavailableException, InterruptedException {
+        try (AudioInputStream stream = openPcmStream(track.file)) {
+            AudioFormat format = stream.getFormat();
+            int frameSize = Math.max(1, format.getFrameSize());
+
+            ByteRingBuffer ringBuffer = new ByteRingBuffer(RING_BUFFER_BYTES);
+            Thread readerThread = new Thread(() -> fillRingBuffer(stream, ringBuffer), "audio-reader");
+            readerThread.setDaemon(true);
+            readerThread.start();
+
+            try (SourceDataLine line = AudioSystem.getSourceDataLine(format)) {
+                line.open(format, CHUNK_BYTES * 4 - (CHUNK_BYTES * 4) % frameSize);
+                line.start();
+
+                // The device only takes whole frames; a partial frame waits at the start of the chunk for the rest of it.
+                byte[] chunk = new byte[CHUNK_BYTES - CHUNK_BYTES % frameSize];
+                int pendingBytes = 0;
+                boolean skipped = false;
+
+                while (true) {
+                    if (!waitWhilePaused(line)) {
+                        skipped = true;
+                        break;
+                    }
+                    int readBytes = ringBuffer.read(chunk, pendingBytes, chunk.length - pendingBytes);
+                    if (readBytes == -1) {
+                        break;
+                    }
+                    pendingBytes += readBytes;
+
+                    int wholeFrameBytes = pendingBytes - pendingBytes % frameSize;
+                    line.write(chunk, 0, wholeFrameBytes);
+                    System.arraycopy(chunk, wholeFrameBytes, chunk, 0, pendingBytes - wholeFrameBytes);
+                    pendingBytes -= wholeFrameBytes;
+                }
+
+                // A finished track plays out what the device still holds; a skipped one is cut off.
+                if (skipped) {
+                    line.flush();
+                } else {
+                    line.drain();
+                }
+                line.stop();
+            } finally {
+                ringBuffer.cancel();
+                readerThread.join();
+            }
+        }
+    }
+
+    // Holds playback while paused; returns false once the track is skipped or stopped.
+    private synchronized boolean waitWhilePaused(SourceDataLine line) throws InterruptedException {
+        if (paused && !skipRequested) {
+            line.stop();
+            while (paused && !skipRequested) {
+                wait();
+            }
+            line.start();
+        }
+        return !skipRequested;
+    }
+
+    // Runs on the reader thread: decodes the track into the ring buffer until it ends or playback stops.
+    private static void fillRingBuffer(AudioInputStream stream, ByteRingBuffer ringBuffer) {
+        byte[] chunk = new byte[CHUNK_BYTES];
+        try {
+            for (int readBytes = stream.read(chunk); readBytes != -1; readBytes = stream.read(chunk)) {
+                if (!ringBuffer.write(chunk, 0, readBytes)) {
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            // Play what was read so far.
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            ringBuffer.finish();
+        }
+    }
+
+    // -- HELPER METHODS ---------------------
+
+    private static Path resolve(Terminal terminal, String fileName) {
+        return terminal.getWorkingDirectory().toPath().resolve(fileName).toAbsolutePath().normalize();
+    }
+
+    // Checks that the file can be played here and reads its name and artist; prints why not and returns null otherwise.
+    private static Track openTrack(Terminal terminal, Path file) throws IOException {
+        if (!Files.isRegularFile(file)) {
+            terminal.printError("The file you are trying to play does not exist.");
+            return null;
+        }
+        if (!file.getFileName().toString().toLowerCase().endsWith(".wav")) {
+            terminal.printError("The file you are requesting to play is not a .wav file; it is unsupported.");
+            return null;
+        }
+
+        try (AudioInputStream stream = openPcmStream(file)) {
+            if (!AudioSystem.isLineSupported(new DataLine.Info(SourceDataLine.class, stream.getFormat()))) {
+                terminal.printError("There is no sound device that can play this file.");
+                return null;
+            }
+        } catch (UnsupportedAudioFileException e) {
+            terminal.printError("The file you are requesting to play is not a .wav file; it is unsupported.");
+            return null;
+        }
+        return readTrackInfo(file);
+    }
+
+    // Opens the file as plain PCM samples (compressed wav encodings, like u-law, are decoded).
+    private static AudioInputStream openPcmStream(Path file) throws IOException, UnsupportedAudioFileException {
+        InputStream fileInput = new BufferedInputStream(Files.newInputStream(file), CHUNK_BYTES);
+        AudioInputStream stream;
+        try {
+            stream = AudioSystem.getAudioInputStream(fileInput);
+        } catch (IOException | UnsupportedAudioFileException e) {
+            fileInput.close();
+            throw e;
+        }
+
+        AudioFormat format = stream.getFormat();
+        AudioFormat.Encoding encoding = format.getEncoding();
+        if (encoding.equals(AudioFormat.Encoding.PCM_SIGNED) || encoding.equals(AudioFormat.Encoding.PCM_UNSIGNED)) {
+            return stream;
+        }
+        AudioFormat pcmFormat = new AudioFormat(AudioFormat.Encoding.PCM_SIGNED, format.getSampleRate(), 16,
+                format.getChannels(), format.getChannels() * 2, format.getSampleRate(), false);
+        return AudioSystem.getAudioInputStream(pcmFormat, stream);
+    }
+
+    // Reads the title (INAM) and artist (IART) from the file's RIFF LIST/INFO chunk, stepping over the sample data
+    // without reading it. Falls back to the file name and "Unknown".
+    static Track readTrackInfo(Path file) throws IOException {
+        String title = null, artist = null;
+
+        try (FileChannel channel = FileChannel.open(file)) {
+            ByteBuffer header = ByteBuffer.allocate(12).order(ByteOrder.LITTLE_ENDIAN);
+            if (readFully(channel, header, 0) && chunkId(header, 0).equals("RIFF") && chunkId(header, 8).equals("WAVE")) {
+                long position = 12;
+                ByteBuffer chunkHeader = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+
+                while (readFully(channel, chunkHeader.clear(), position)) {
+                    String chunkId = chunkId(chunkHeader, 0);
+                    long chunkSize = Integer.toUnsignedLong(chunkHeader.getInt(4));
+                    long dataStart = position + 8;
+
+                    if (chunkId.equals("LIST") && chunkSize >= 4 && chunkSize <= 1 << 20) {
+                        ByteBuffer list = ByteBuffer.allocate((int) chunkSize).order(ByteOrder.LITTLE_ENDIAN);
+                        if (readFully(channel, list, dataStart) && chunkId(list, 0).equals("INFO")) {
+
+                            // INFO holds sub-chunks of null-terminated text, each padded to an even size.
+                            int subChunkStart = 4;
+                            while (subChunkStart + 8 <= list.capacity()) {
+                                String subChunkId = chunkId(list, subChunkStart);
+                                int subChunkSize = list.getInt(subChunkStart + 4);
+                                if (subChunkSize < 0 || subChunkStart + 8 + subChunkSize > list.capacity()) {
+                                    break;
+                                }
+                                String text = infoText(list, subChunkStart + 8, subChunkSize);
+                                if (subChunkId.equals("INAM") && !text.isEmpty()) {
+                                    title = text;
+                                } else if (subChunkId.equals("IART") && !text.isEmpty()) {
+                                    artist = text;
+                                }
+                                subChunkStart += 8 + subChunkSize + (subChunkSize & 1);
+                            }
+                        }
+                    }
+                    position = dataStart + chunkSize + (chunkSize & 1);
+                }
+            }
+        }
+
+        return new Track(file, title != null ? title : file.getFileName().toString(), artist != null ? artist : "Unknown");
+    }
+
+    // Reads until the buffer is full; returns false if the file ends first.
+    private static boolean readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int readBytes = channel.read(buffer, position + buffer.position());
+            if (readBytes == -1) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String chunkId(ByteBuffer buffer, int start) {
+        byte[] id = new byte[4];
+        buffer.get(start, id);
+        return new String(id, StandardCharsets.US_ASCII);
+    }
+
+    private static String infoText(ByteBuffer buffer, int start, int length) {
+        int end = start;
+        while (end < start + length && buffer.get(end) != 0) {
+            end++;
+        }
+        byte[] text = new byte[end - start];
+        buffer.get(start, text);
+        return new String(text, StandardCharsets.UTF_8).trim();
+    }
+
+    private boolean isBusy() {
+        return currentTrack != null || !queue.isEmpty();
+    }
+
+    private void startPlaybackThread() {
+        if (playbackThread == null) {
+            playbackThread = new Thread(this::playQueuedTracks, "audio-playback");
+            playbackThread.setDaemon(true);
+            playbackThread.start();
+        }
+    }
+
+    // -- NESTED CLASSES ---------------------
+
+    // A queued file, with the title and artist read from it.
+    static class Track {
+        final Path file;
+        final String title, artist;
+
+        Track(Path file, String title, String artist) {
+            this.file = file;
+            this.title = title;
+            this.artist = artist;
+        }
+
+        @Override
+        public String toString() {
+            return "\"" + title + "\" by " + artist;
+        }
+    }
+
+    // A fixed-size byte buffer between one writer and one reader; each side waits while it is full or empty.
+    static class ByteRingBuffer {
+
+        private final byte[] buffer;
+        private int readIndex, size;
+        private boolean finished, cancelled;
+
+        ByteRingBuffer(int capacity) {
+            buffer = new byte[capacity];
+        }
+
+        // Copies all the bytes in, waiting for room as needed; returns false if the reader cancelled.
+        synchronized boolean write(byte[] bytes, int offset, int length) throws InterruptedException {
+            while (length > 0) {
+                while (size == buffer.length && !cancelled) {
+                    wait();
+                }
+                if (cancelled) {
+                    return false;
+                }
+
+                int writeIndex = (readIndex + size) % buffer.length;
+                int copied = Math.min(length, Math.min(buffer.length - size, buffer.length - writeIndex));
+                System.arraycopy(bytes, offset, buffer, writeIndex, copied);
+                size += copied;
+                offset += copied;
+                length -= copied;
+                notifyAll();
+            }
+            return true;
+        }
+
+        // Copies up to length bytes out, waiting until there are some; returns -1 once the writer finished and all were read.
+        synchronized int read(byte[] bytes, int offset, int length) throws InterruptedException {
+            while (size == 0 && !finished && !cancelled) {
+                wait();
+            }
+            if (size == 0 || cancelled) {
+                return -1;
+            }
+
+            int copied = Math.min(length, Math.min(size, buffer.length - readIndex));
+            System.arraycopy(buffer, readIndex, bytes, offset, copied);
+            readIndex = (readIndex + copied) % buffer.length;
+            size -= copied;
+            notifyAll();
+            return copied;
+        }
+
+        // The writer has no more bytes.
+        synchronized void finish() {
+            finished = true;
+            notifyAll();
+        }
+
+        // The reader wants no more bytes.
+        synchronized void cancel() {
+            cancelled = true;
+            notifyAll();
+        }
+    }
+
+}
@@ -0,0 +1,512 @@
+// == IMPORTS =======================
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Scanner;
+import java.util.regex.Pattern;
+
+// == CLASS =======================
+// BENCHMARKS | Secret command that measures the speed of the terminal's hot paths.
+public class Benchmarks {
+
+    // -- CONSTANT / UTILITY VARIABLES ------
+
+    static final int WARMUP_ROUNDS = 20_000, MEASURED_ROUNDS = 100_000;
+    static final String[] SAMPLE_COMMANDS = {
+            "lookhere",
+            "go up",
+            "read media/text/sample-text.txt",
+            "move file notes.txt archive",
+            "print Hello there, this is a longer line of text to print",
+            "delete directory build",
+            "explain all",
+            "make file todo"
+    };
+
+    // The grep benchmark searches a generated text file of about this size, this many times per reader.
+    static final long GREP_FILE_BYTES = 64L << 20;
+    static final int GREP_ROUNDS = 3;
+
+    // The server benchmark opens this many sessions by default, each running this many commands.
+    static final int SERVER_SESSIONS = 2000, SERVER_COMMANDS_PER_SESSION = 10;
+    static final String[] SERVER_COMMANDS = {
+            "whereami",
+            "print Hello there",
+            "lookhere",
+            "log"
+    };
+
+    // The suite warms every benchmark up, then measures it, this many iterations each (like JMH, in one fork: this JVM).
+    static final int SUITE_WARMUP_ITERATIONS = 3, SUITE_MEASURED_ITERATIONS = 5;
+
+    // Sizes of the suite's generated fixtures.
+    static final int DISPATCH_COMMANDS = 20_000, LISTING_FILES = 20_000;
+    static final int TREE_DIRECTORIES = 100, TREE_FILES_PER_DIRECTORY = 20;
+    static final long READ_FILE_BYTES = 32L << 20;
+    static final String[] DISPATCH_SAMPLE_COMMANDS = {
+            "whereami",
+            "print Hello there, this is a longer line of text to print",
+            "safety status",
+            "explain lookhere"
+    };
+
+    // Student's t for a 99.9% confidence interval, by degrees of freedom (1 to 10); JMH reports its errors the same way.
+    private static final double[] T_99_9 = {636.62, 31.599, 12.924, 8.610, 6.869, 5.959, 5.408, 5.041, 4.781, 4.587};
+
+    // Keeps the benchmark results "used" so the JIT cannot remove the measured work.
+    private static long sink;
+
+    // -- COMMAND REGISTRATION ---------------
+
+    static void registerCommands(CommandRegistry registry) {
+        registry.register(Command.of("benchmark", 1, false, true,
+                "[ benchmark (tokenizer, grep, serve + none, session_count + commands_per_session, suite + none, --json + file_name) | Measures how fast a part of the terminal runs; suite measures the command loop, lookhere, read and delete, and can save the results as JMH-style JSON. ]",
+                (terminal, tokenizedCommand) -> runBenchmark(terminal, tokenizedCommand)));
+    }
+
+    // -- BENCHMARK METHODS ------------------
+
+    private static void runBenchmark(Terminal terminal, String[] tokenizedCommand) throws IOException, InterruptedException {
+        String benchmarkName = tokenizedCommand[1];
+        if (benchmarkName.equalsIgnoreCase("tokenizer")) {
+            benchmarkTokenizer(terminal);
+        } else if (benchmarkName.equalsIgnoreCase("grep")) {
+            benchmarkGrep(terminal);
+        } else if (benchmarkName.equalsIgnoreCase("suite")) {
+            Path jsonFile = null;
+            if (tokenizedCommand.length > 3 && tokenizedCommand[2].equals("--json")) {
+                jsonFile = terminal.getWorkingDirectory().toPath().resolve(tokenizedCommand[3]).toAbsolutePath();
+            } else if (tokenizedCommand.length > 2) {
+                throw new IndexOutOfBoundsException();
+            }
+            benchmarkSuite(terminal, jsonFile);
+        } else if (benchmarkName.equalsIgnoreCase("serve")) {
+            try {
+                benchmarkServer(terminal,
+                        tokenizedCommand.length > 2 ? Integer.parseInt(tokenizedCommand[2]) : SERVER_SESSIONS,
+                        tokenizedCommand.length > 3 ? Integer.parseInt(tokenizedCommand[3]) : SERVER_COMMANDS_PER_SESSION);
+            } catch (NumberFormatException e) {
+                throw new IndexOutOfBoundsException();
+            }
+        } else {
+            terminal.printError("Unknown benchmark. Use 'explain benchmark' to see the available benchmarks.");
+        }
+    }
+
+    // Compares the single-pass lexer against the old 'command.split(" ")' tokenizing.
+    private static void benchmarkTokenizer(Terminal terminal) {
+
+        CommandLexer lexer = new CommandLexer(variableName -> null);
+
+        // Warm both paths up so that the JIT has compiled them before measuring.
+        runSplit(WARMUP_ROUNDS);
+        runLexer(lexer, WARMUP_ROUNDS);
+
+        long startTime = System.nanoTime();
+        long splitTokens = runSplit(MEASURED_ROUNDS);
+        long splitTime = System.nanoTime() - startTime;
+
+        startTime = System.nanoTime();
+        long lexerTokens = runLexer(lexer, MEASURED_ROUNDS);
+        long lexerTime = System.nanoTime() - startTime;
+
+        terminal.getOutput().printf("split(\" \")   : %,15.0f tokens/sec%n", splitTokens * 1e9 / splitTime);
+        terminal.getOutput().printf("CommandLexer : %,15.0f tokens/sec%n", lexerTokens * 1e9 / lexerTime);
+    }
+
+    private static long runSplit(int rounds) {
+        long tokenCount = 0;
+        for (int round = 0; round < rounds; round++) {
+            for (String command : SAMPLE_COMMANDS) {
+                String[] tokens = command.split(" ");
+                tokenCount += tokens.length;
+                sink += tokens[tokens.length - 1].length();
+            }
+        }
+        return tokenCount;
+    }
+
+    private static long runLexer(CommandLexer lexer, int rounds) {
+        long tokenCount = 0;
+        for (int round = 0; round < rounds; round++) {
+            for (String command : SAMPLE_COMMANDS) {
+                int tokens = lexer.lex(command);
+                tokenCount += tokens;
+                sink += lexer.token(tokens - 1).length();
+            }
+        }
+        return tokenCount;
+    }
+
+    // Compares grep (mapped, chunked, parallel) against reading the file line by line with a Scanner, like 'read' does.
+    private static void benchmarkGrep(Terminal terminal) throws IOException, InterruptedException {
+
+        Path sampleFile = Files.createTempFile("pseudobash-grep-benchmark", ".txt");
+        try {
+            writeSampleText(sampleFile, GREP_FILE_BYTES);
+            Pattern pattern = Pattern.compile("needle [0-9]+");
+            PrintStream discardedOutput = new PrintStream(OutputStream.nullOutputStream());
+            ContentSearch contentSearch = new ContentSearch(pattern, sampleFile.getParent(), discardedOutput);
+
+            // One warm-up round each, then the measured rounds.
+            long scannerMatches = searchWithScanner(sampleFile, pattern);
+            long grepMatches = contentSearch.search(Collections.singletonList(sampleFile));
+
+            long startTime = System.nanoTime();
+            for (int round = 0; round < GREP_ROUNDS; round++) {
+                sink += searchWithScanner(sampleFile, pattern);
+            }
+            long scannerTime = System.nanoTime() - startTime;
+
+            startTime = System.nanoTime();
+            for (int round = 0; round < GREP_ROUNDS; round++) {
+                sink += contentSearch.search(Collections.singletonList(sampleFile));
+            }
+            long grepTime = System.nanoTime() - startTime;
+
+            double megabytes = Files.size(sampleFile) * (double) GREP_ROUNDS / 1e6;
+            terminal.getOutput().printf("Scanner : %,10.1f MB/s (%,d matches)%n", megabytes * 1e9 / scannerTime, scannerMatches);
+            terminal.getOutput().printf("grep    : %,10.1f MB/s (%,d matches)%n", megabytes * 1e9 / grepTime, grepMatches);
+        } finally {
+            Files.deleteIfExists(sampleFile);
+        }
+    }
+
+    private static long searchWithScanner(Path file, Pattern pattern) throws IOException {
+        long matchCount = 0;
+        try (Scanner fileReader = new Scanner(file, StandardCharsets.UTF_8)) {
+            while (fileReader.hasNextLine()) {
+                if (pattern.matcher(fileReader.nextLine()).find()) {
+                    matchCount++;
+                }
+            }
+        }
+        return matchCount;
+    }
+
+    // Writes log-like lines; every 1000th one contains the searched text.
+    private static void writeSampleText(Path file, long size) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            long writtenBytes = 0;
+            for (int lineNumber = 0; writtenBytes < size; lineNumber++) {
+                String line = (lineNumber % 1000 == 0)
+                        ? "2024-01-01 12:00:00 WARN found the needle " + lineNumber + " in the haystack"
+                        : "2024-01-01 12:00:00 INFO request " + lineNumber + " handled in " + (lineNumber % 97) + " ms by worker-" + (lineNumber % 8);
+                writer.write(line);
+                writer.newLine();
+                writtenBytes += line.length() + 1;
+            }
+        }
+    }
+
+    // Measures the command loop (tokenizing and dispatching), lookhere on a large directory, read on a large file and
+    // delete on a directory tree, on fixtures it generates in a temporary directory (removed afterwards). Each
+    // benchmark runs real commands through a quiet session, JMH style: warm-up iterations, then measured ones with a
+    // 99.9% confidence interval. The results can be saved in JMH's JSON format, to compare runs with the usual JMH tools.
+    // (With the JMH libraries at hand, 'mvn -P jmh package' builds the same benchmarks under JMH itself; see jmh/.)
+    private static void benchmarkSuite(Terminal terminal, Path jsonFile) throws IOException, InterruptedException {
+        Path fixtures = Files.createTempDirectory("pseudobash-benchmark");
+        PrintStream discardedOutput = new PrintStream(OutputStream.nullOutputStream());
+        List<SuiteResult> results = new ArrayList<>();
+        terminal.getOutput().printf("%-14s %5s %14s   %-12s%n", "BENCHMARK", "MODE", "SCORE", "UNITS");
+
+        try {
+            StringBuilder dispatchScript = new StringBuilder();
+            for (int commandIndex = 0; commandIndex < DISPATCH_COMMANDS; commandIndex++) {
+                dispatchScript.append(DISPATCH_SAMPLE_COMMANDS[commandIndex % DISPATCH_SAMPLE_COMMANDS.length]).append('\n');
+            }
+            results.add(measure(terminal, "dispatch", "thrpt", "commands/s", () -> 0,
+                    () -> runCommands(dispatchScript.toString(), discardedOutput, fixtures, true) * DISPATCH_COMMANDS));
+
+            Path listingDirectory = Files.createDirectory(fixtures.resolve("listing"));
+            for (int fileIndex = 0; fileIndex < LISTING_FILES; fileIndex++) {
+                Files.createFile(listingDirectory.resolve("file-" + fileIndex + ".txt"));
+            }
+            results.add(measure(terminal, "lookhere", "avgt", "ms/op", () -> 0,
+                    () -> runCommands("lookhere listing\n", discardedOutput, fixtures, true)));
+            results.add(measure(terminal, "lookhere-long", "avgt", "ms/op", () -> 0,
+                    () -> runCommands("lookhere listing -l\n", discardedOutput, fixtures, true)));
+
+            Path largeFile = fixtures.resolve("large.txt");
+            writeSampleText(largeFile, READ_FILE_BYTES);
+            double largeFileMegabytes = Files.size(largeFile) / 1e6;
+            results.add(measure(terminal, "read", "thrpt", "MB/s", () -> 0,
+                    () -> runCommands("read large.txt\n", discardedOutput, fixtures, true) * largeFileMegabytes));
+
+            // The tree is built again before every iteration (not timed), then deleted with resource safety off.
+            results.add(measure(terminal, "delete", "thrpt", "files/s", () -> buildTree(fixtures.resolve("tree")),
+                    () -> runCommands("delete directory tree\n", discardedOutput, fixtures, false) * TREE_DIRECTORIES * TREE_FILES_PER_DIRECTORY));
+        } finally {
+            new DirectoryDeleter().deleteTree(fixtures, discardedOutput);
+        }
+
+        if (jsonFile != null) {
+            writeJson(jsonFile, results);
+            terminal.getOutput().println("Saved the results to " + jsonFile + ".");
+        }
+    }
+
+    // Runs the commands in a quiet session in the directory; returns 1 (one operation), or throws if any command failed.
+    private static double runCommands(String script, PrintStream output, Path directory, boolean resourceSafety) {
+        if (Terminal.runEmbedded(new StringReader(script), output, directory.toFile(), resourceSafety) != 0) {
+            throw new IllegalStateException("a benchmarked command failed: " + script.lines().findFirst().orElse(""));
+        }
+        return 1;
+    }
+
+    // Prepares (not timed) and runs (timed) the benchmark for every iteration, then prints and returns its score:
+    // work per second for throughput ("thrpt"), or milliseconds per operation for average time ("avgt").
+    private static SuiteResult measure(Terminal terminal, String name, String mode, String unit, SuiteStep prepare, SuiteStep run) throws IOException, InterruptedException {
+        double[] scores = new double[SUITE_MEASURED_ITERATIONS];
+        try {
+            for (int iteration = -SUITE_WARMUP_ITERATIONS; iteration < SUITE_MEASURED_ITERATIONS; iteration++) {
+                prepare.run();
+                long startTime = System.nanoTime();
+                double work = run.run();
+                double seconds = (System.nanoTime() - startTime) / 1e9;
+
+                if (iteration >= 0) {
+                    scores[iteration] = mode.equals("thrpt") ? work / seconds : seconds * 1000 / work;
+                }
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+            }
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException(e);
+        }
+
+        SuiteResult result = new SuiteResult(name, mode, unit, scores);
+        terminal.getOutput().printf("%-14s %5s %,14.3f +- %,.3f %s%n", name, mode, result.score(), result.scoreError(), unit);
+        terminal.getOutput().flush();
+        return result;
+    }
+
+    // Makes TREE_DIRECTORIES directories of TREE_FILES_PER_DIRECTORY small files each (nested a few levels deep).
+    private static double buildTree(Path root) throws IOException {
+        for (int directoryIndex = 0; directoryIndex < TREE_DIRECTORIES; directoryIndex++) {
+            Path directory = Files.createDirectories(root.resolve("group-" + directoryIndex % 10).resolve("directory-" + directoryIndex));
+            for (int fileIndex = 0; fileIndex < TREE_FILES_PER_DIRECTORY; fileIndex++) {
+                Files.writeString(directory.resolve("file-" + fileIndex + ".txt"), "benchmark file " + fileIndex);
+            }
+        }
+        return 0;
+    }
+
+    // Writes the results like JMH's '-rf json' does (one fork, one thread), so its tools can read and compare them.
+    private static void writeJson(Path file, List<SuiteResult> results) throws IOException {
+        StringBuilder json = new StringBuilder("[\n");
+        for (int resultIndex = 0; resultIndex < results.size(); resultIndex++) {
+            SuiteResult result = results.get(resultIndex);
+            StringBuilder rawData = new StringBuilder();
+            for (double score : result.scores) {
+                rawData.append(rawData.length() == 0 ? "" : ", ").append(score);
+            }
+
+            json.append("    {\n")
+                    .append("        \"jmhVersion\" : \"pseudobash\",\n")
+                    .append("        \"benchmark\" : \"Benchmarks.").append(result.name).append("\",\n")
+                    .append("        \"mode\" : \"").append(result.mode).append("\",\n")
+                    .append("        \"threads\" : 1,\n")
+                    .append("        \"forks\" : 1,\n")
+                    .append("        \"jdkVersion\" : \"").append(System.getProperty("java.version")).append("\",\n")
+                    .append("        \"warmupIterations\" : ").append(SUITE_WARMUP_ITERATIONS).append(",\n")
+                    .append("        \"measurementIterations\" : ").append(SUITE_MEASURED_ITERATIONS).append(",\n")
+                    .append("        \"primaryMetric\" : {\n")
+                    .append("            \"score\" : ").append(result.score()).append(",\n")
+                    .append("            \"scoreError\" : ").append(result.scoreError()).append(",\n")
+                    .append("            \"scoreUnit\" : \"").append(result.unit).append("\",\n")
+                    .append("            \"rawData\" : [[").append(rawData).append("]]\n")
+                    .append("        }\n")
+                    .append(resultIndex == results.size() - 1 ? "    }\n" : "    },\n");
+        }
+        json.append("]\n");
+        Files.writeString(file, json, StandardCharsets.UTF_8);
+    }
+
+    // One step of a suite benchmark; returns the work it did (operations, bytes, files...).
+    private interface SuiteStep {
+        double run() throws Exception;
+    }
+
+    // The measured scores of one suite benchmark.
+    private static class SuiteResult {
+        final String name, mode, unit;
+        final double[] scores;
+
+        SuiteResult(String name, String mode, String unit, double[] scores) {
+            this.name = name;
+            this.mode = mode;
+            this.unit = unit;
+            this.scores = scores;
+        }
+
+        double score() {
+            return Arrays.stream(scores).average().orElse(0);
+        }
+
+        // Half the width of the 99.9% confidence interval around the score.
+        double scoreError() {
+            if (scores.length < 2) {
+                return 0;
+            }
+            double mean = score(), squaredDeviations = 0;
+            for (double score : scores) {
+                squaredDeviations += (score - mean) * (score - mean);
+            }
+            double standardDeviation = Math.sqrt(squaredDeviations / (scores.length - 1));
+            double t = scores.length - 1 <= T_99_9.length ? T_99_9[scores.length - 2] : 3.291;
+            return t * standardDeviation / Math.sqrt(scores.length);
+        }
+    }
+
+    // Starts a server on a free loopback port and drives it through many connections at once, all from one selector
+    // thread: every connection sends the token, then a command, waits for the next prompt, and repeats. Reports commands/sec and latency.
+    private static void benchmarkServer(Terminal terminal, int sessionCount, int commandsPerSession) throws IOException, InterruptedException {
+        if (sessionCount < 1 || commandsPerSession < 1) {
+            throw new IndexOutOfBoundsException();
+        }
+
+        String token = SessionServer.generateToken();
+        try (SessionServer server = new SessionServer(InetAddress.getLoopbackAddress(), 0, token, null); Selector selector = Selector.open()) {
+            Thread serverThread = new Thread(() -> {
+                try {
+                    server.serve();
+                } catch (IOException e) {
+                    // Reported below as sessions that did not finish.
+                }
+            }, "benchmark-server");
+            serverThread.setDaemon(true);
+            serverThread.start();
+
+            // Every prompt a session prints ends with '$ ' and the color reset; a reply is complete once this arrives.
+            byte[] promptEnd = ("$ " + Terminal.COLOR_CODES.get("RESET")).getBytes(StandardCharsets.UTF_8);
+
+            long startTime = System.nanoTime();
+            InetSocketAddress serverAddress = new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getPort());
+            for (int sessionIndex = 0; sessionIndex < sessionCount; sessionIndex++) {
+                SocketChannel channel = SocketChannel.open();
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                channel.connect(serverAddress);
+                channel.register(selector, SelectionKey.OP_CONNECT, new LoadClient(sessionIndex, promptEnd));
+            }
+
+            long[] latencies = new long[sessionCount * commandsPerSession];
+            int latencyCount = 0, finishedSessions = 0, brokenSessions = 0;
+            ByteBuffer readBuffer = ByteBuffer.allocate(64 * 1024);
+
+            while (finishedSessions < sessionCount) {
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                selector.select(1000);
+
+                for (SelectionKey key : selector.selectedKeys()) {
+                    SocketChannel channel = (SocketChannel) key.channel();
+                    LoadClient client = (LoadClient) key.attachment();
+                    try {
+                        if (key.isConnectable()) {
+                            channel.finishConnect();
+                            send(channel, token);
+                            key.interestOps(SelectionKey.OP_READ);
+                            continue;
+                        }
+
+                        readBuffer.clear();
+                        if (channel.read(readBuffer) == -1) {
+                            throw new IOException("closed by the server");
+                        }
+                        if (!client.receive(readBuffer.flip())) {
+                            continue;
+                        }
+
+                        // A prompt arrived: the previous command (if any) is done; send the next one, or leave.
+                        long now = System.nanoTime();
+                        if (client.sentCommands > 0) {
+                            latencies[latencyCount++] = now - client.sentTime;
+                        }
+                        if (client.sentCommands == commandsPerSession) {
+                            send(channel, "exit");
+                            channel.close();
+                            finishedSessions++;
+                        } else {
+                            send(channel, SERVER_COMMANDS[(client.number + client.sentCommands) % SERVER_COMMANDS.length]);
+                            client.sentTime = now;
+                            client.sentCommands++;
+                        }
+                    } catch (IOException e) {
+                        channel.close();
+                        finishedSessions++;
+                        brokenSessions++;
+                    }
+                }
+                selector.selectedKeys().clear();
+            }
+            long elapsedTime = System.nanoTime() - startTime;
+
+            Arrays.sort(latencies, 0, latencyCount);
+            PrintStream output = terminal.getOutput();
+            output.printf("Sessions     : %,d (%,d broke off)%n", sessionCount, brokenSessions);
+            output.printf("Commands     : %,d in %,.0f ms = %,.0f commands/sec%n", latencyCount, elapsedTime / 1e6, latencyCount * 1e9 / elapsedTime);
+            if (latencyCount > 0) {
+                output.printf("Latency (ms) : p50 %.2f | p99 %.2f | max %.2f%n",
+                        percentile(latencies, latencyCount, 0.50) / 1e6, percentile(latencies, latencyCount, 0.99) / 1e6, latencies[latencyCount - 1] / 1e6);
+            }
+        }
+    }
+
+    private static void send(SocketChannel channel, String command) throws IOException {
+        ByteBuffer commandBytes = ByteBuffer.wrap((command + "\n").getBytes(StandardCharsets.UTF_8));
+        while (commandBytes.hasRemaining()) {
+            channel.write(commandBytes);
+        }
+    }
+
+    private static long percentile(long[] sortedValues, int count, double fraction) {
+        return sortedValues[Math.min(count - 1, (int) Math.ceil(fraction * count) - 1)];
+    }
+
+    // One connection of the server benchmark; remembers the last bytes it received to spot the end of a prompt.
+    private static class LoadClient {
+        final int number;
+        int sentCommands;
+        long sentTime;
+        private final byte[] promptEnd, lastBytes;
+
+        LoadClient(int number, byte[] promptEnd) {
+            this.number = number;
+            this.promptEnd = promptEnd;
+            this.lastBytes = new byte[promptEnd.length];
+        }
+
+        // Takes in the received bytes; returns whether they ended with a prompt.
+        boolean receive(ByteBuffer received) {
+            while (received.hasRemaining()) {
+                System.arraycopy(lastBytes, 1, lastBytes, 0, lastBytes.length - 1);
+                lastBytes[lastBytes.length - 1] = received.get();
+            }
+            return Arrays.equals(lastBytes, promptEnd);
+        }
+    }
+
+}
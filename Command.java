@@ -0,0 +1,59 @@
+// == INTERFACE =======================
+// COMMAND | A single terminal command; carries its own explanation, arity and safety flag.
+public interface Command {
+
+    // The name the command is typed with (always lowercase).
+    String name();
+
+    // The explanation printed by 'explain' (ex. "[ go (directory_name, up) | Will switch the working directory. ]").
+    String explanation();
+
+    // The minimum amount of arguments (not counting the command name itself).
+    int arity();
+
+    // Whether the command changes resources; such commands are blocked while resource safety is on.
+    boolean modifiesResources();
+
+    // Whether the command is listed by 'secrets' instead of 'help'.
+    boolean isSecret();
+
+    // Runs the command; tokenizedCommand[0] is the command name, the arguments follow it.
+    void execute(Terminal terminal, String[] tokenizedCommand) throws Exception;
+
+    // -- LAMBDA SUPPORT ---------------------
+
+    // The behaviour of a command, so simple commands can be written as lambdas.
+    @FunctionalInterface
+    interface Action {
+        void execute(Terminal terminal, String[] tokenizedCommand) throws Exception;
+    }
+
+    // Wraps an action and its metadata into a command.
+    static Command of(String name, int arity, boolean modifiesResources, boolean isSecret, String explanation, Action action) {
+        return new Command() {
+            public String name() {
+                return name;
+            }
+
+            public String explanation() {
+                return explanation;
+            }
+
+            public int arity() {
+                return arity;
+            }
+
+            public boolean modifiesResources() {
+                return modifiesResources;
+            }
+
+            public boolean isSecret() {
+                return isSecret;
+            }
+
+            public void execute(Terminal terminal, String[] tokenizedCommand) throws Exception {
+                action.execute(terminal, tokenizedCommand);
+            }
+        };
+    }
+}
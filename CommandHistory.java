@@ -0,0 +1,307 @@
+// == IMPORTS =======================
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+// == CLASS =======================
+// COMMAND HISTORY | The most recent commands in a fixed-size ring buffer, saved to an append-only file in the background.
+public class CommandHistory {
+
+    // -- CONSTANT / UTILITY VARIABLES ------
+
+    static final Path DEFAULT_HISTORY_FILE = Paths.get(System.getProperty("user.home"), ".pseudobash_history");
+    static final int CAPACITY = 100_000;
+
+    // The file is rewritten with only the kept commands once it holds this many lines.
+    static final int MAX_FILE_LINES = CAPACITY * 2;
+
+    // The writer waits this long after a command before writing, so commands arriving together are written together.
+    static final long FLUSH_DELAY_MILLIS = 200;
+
+    private static final String CLOSE_MARKER = new String("close");
+
+    // -- OBJECT FIELDS ---------------------
+
+    // Commands are numbered from 1; command n lives at ring[(n - 1) % CAPACITY] while it is among the newest CAPACITY.
+    // The ring starts small and doubles up to CAPACITY, so the many short sessions of a server stay small.
+    private String[] ring = new String[64];
+    private long newestNumber;
+
+    // Trigram -> numbers of the commands containing it; built on the first search, then kept up to date.
+    private Map<Long, LongList> searchIndex;
+    private long staleIndexEntries;
+
+    private final Path historyFile;
+    private final BlockingQueue<String> pendingWrites = new LinkedBlockingQueue<>();
+    private Thread writerThread;
+
+    // -- CONSTRUCTOR -------------------------
+
+    // A history that is only kept in memory (historyFile null) or also saved to the file.
+    public CommandHistory(Path historyFile) {
+        this.historyFile = historyFile;
+    }
+
+    // Loads the newest commands of the history file; the commands added from now on are appended to it.
+    public static CommandHistory open(Path historyFile) {
+        CommandHistory history = new CommandHistory(historyFile);
+        long fileLines = 0;
+
+        if (Files.exists(historyFile)) {
+            try (BufferedReader historyReader = Files.newBufferedReader(historyFile, StandardCharsets.UTF_8)) {
+                for (String command = historyReader.readLine(); command != null; command = historyReader.readLine()) {
+                    history.store(command);
+                    fileLines++;
+                }
+            } catch (IOException e) {
+                // An unreadable history only means no earlier commands.
+            }
+        }
+
+        // Keep the file from growing forever: rewrite it with only the commands still in the ring.
+        if (fileLines > MAX_FILE_LINES) {
+            history.compactFile();
+        }
+        return history;
+    }
+
+    // -- HISTORY METHODS --------------------
+
+    // Adds a command (blank ones are ignored) and queues it to be saved.
+    public synchronized void add(String command) {
+        if (command.isBlank()) {
+            return;
+        }
+        store(command);
+
+        if (historyFile != null) {
+            startWriter();
+            pendingWrites.add(command);
+        }
+    }
+
+    // Returns command n, or null if there is no such command (anymore).
+    public synchronized String get(long number) {
+        return (number >= oldestNumber() && number <= newestNumber) ? ring[slotOf(number)] : null;
+    }
+
+    // Returns the number of the newest command (0 if there is none).
+    public synchronized long newestNumber() {
+        return newestNumber;
+    }
+
+    // Returns the number of the oldest command that is still kept.
+    public synchronized long oldestNumber() {
+        return Math.max(1, newestNumber - CAPACITY + 1);
+    }
+
+    // Returns every kept command, oldest first.
+    public synchronized List<Entry> entries() {
+        List<Entry> entries = new ArrayList<>();
+        for (long number = oldestNumber(); number <= newestNumber; number++) {
+            entries.add(new Entry(number, ring[slotOf(number)]));
+        }
+        return entries;
+    }
+
+    // Returns the kept commands that contain the text (ignoring case), oldest first.
+    public synchronized List<Entry> search(String text) {
+        String searchedText = text.toLowerCase();
+        List<Entry> matches = new ArrayList<>();
+
+        // Short texts have no trigrams; check every command.
+        if (searchedText.length() < 3) {
+            for (Entry entry : entries()) {
+                if (entry.command.toLowerCase().contains(searchedText)) {
+                    matches.add(entry);
+                }
+            }
+            return matches;
+        }
+
+        if (searchIndex == null) {
+            buildSearchIndex();
+        }
+
+        // Only the commands that contain every trigram of the text can match; start from the rarest trigram.
+        LongList candidates = null;
+        for (int charIndex = 0; charIndex + 3 <= searchedText.length(); charIndex++) {
+            LongList postings = searchIndex.get(trigramKey(searchedText, charIndex));
+            if (postings == null) {
+                return matches;
+            }
+            if (candidates == null || postings.size < candidates.size) {
+                candidates = postings;
+            }
+        }
+
+        long oldestNumber = oldestNumber();
+        for (int candidateIndex = 0; candidateIndex < candidates.size; candidateIndex++) {
+            long number = candidates.values[candidateIndex];
+            if (number >= oldestNumber && ring[slotOf(number)].toLowerCase().contains(searchedText)) {
+                matches.add(new Entry(number, ring[slotOf(number)]));
+            }
+        }
+        return matches;
+    }
+
+    // Writes whatever is still queued, then stops the writer (call when the session ends).
+    public void close() {
+        Thread writer;
+        synchronized (this) {
+            writer = writerThread;
+        }
+        if (writer == null) {
+            return;
+        }
+
+        pendingWrites.add(CLOSE_MARKER);
+        try {
+            writer.join(2000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // -- HELPER METHODS ---------------------
+
+    // Puts the command into the ring (over the oldest one once it is full), and into the search index if there is one.
+    private void store(String command) {
+        newestNumber++;
+        if (newestNumber > ring.length && ring.length < CAPACITY) {
+            ring = Arrays.copyOf(ring, Math.min(CAPACITY, ring.length * 2));
+        }
+        ring[slotOf(newestNumber)] = command;
+
+        if (searchIndex != null) {
+            indexCommand(newestNumber, command);
+
+            // Commands that fell out of the ring still have postings; rebuild once there are as many of them as kept commands.
+            if (newestNumber > CAPACITY && ++staleIndexEntries >= CAPACITY) {
+                buildSearchIndex();
+            }
+        }
+    }
+
+    private void buildSearchIndex() {
+        searchIndex = new HashMap<>();
+        staleIndexEntries = 0;
+        for (long number = oldestNumber(); number <= newestNumber; number++) {
+            indexCommand(number, ring[slotOf(number)]);
+        }
+    }
+
+    private void indexCommand(long number, String command) {
+        String lowerCaseCommand = command.toLowerCase();
+        for (int charIndex = 0; charIndex + 3 <= lowerCaseCommand.length(); charIndex++) {
+            searchIndex.computeIfAbsent(trigramKey(lowerCaseCommand, charIndex), key -> new LongList()).addIfNotLast(number);
+        }
+    }
+
+    private static int slotOf(long number) {
+        return (int) ((number - 1) % CAPACITY);
+    }
+
+    // Packs three (lowercase) characters into one key.
+    private static long trigramKey(CharSequence text, int start) {
+        return ((long) text.charAt(start) << 32) | ((long) text.charAt(start + 1) << 16) | text.charAt(start + 2);
+    }
+
+    // Starts the background writer (once).
+    private void startWriter() {
+        if (writerThread == null) {
+            writerThread = new Thread(this::writeQueuedCommands, "history-writer");
+            writerThread.setDaemon(true);
+            writerThread.start();
+        }
+    }
+
+    // Runs on the writer thread: appends the queued commands to the file in batches, one flush per batch.
+    private void writeQueuedCommands() {
+        try (BufferedWriter historyWriter = Files.newBufferedWriter(historyFile, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            while (true) {
+                List<String> batch = new ArrayList<>();
+                batch.add(pendingWrites.take());
+                Thread.sleep(FLUSH_DELAY_MILLIS);
+                pendingWrites.drainTo(batch);
+
+                boolean closing = false;
+                for (String command : batch) {
+                    if (command == CLOSE_MARKER) {
+                        closing = true;
+                    } else {
+                        historyWriter.write(command);
+                        historyWriter.newLine();
+                    }
+                }
+                historyWriter.flush();
+
+                if (closing) {
+                    return;
+                }
+            }
+        } catch (IOException | InterruptedException e) {
+            // The history just stays in memory (ex. the home directory is read-only).
+        }
+    }
+
+    // Rewrites the history file with only the kept commands (into a temporary file, then renamed over it).
+    private void compactFile() {
+        Path temporaryFile = historyFile.resolveSibling(historyFile.getFileName() + ".tmp");
+        try {
+            try (BufferedWriter historyWriter = Files.newBufferedWriter(temporaryFile, StandardCharsets.UTF_8)) {
+                for (Entry entry : entries()) {
+                    historyWriter.write(entry.command);
+                    historyWriter.newLine();
+                }
+            }
+            Files.move(temporaryFile, historyFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // Try again next time.
+        }
+    }
+
+    // -- NESTED CLASSES ---------------------
+
+    // A command together with its history number.
+    public static class Entry {
+        final long number;
+        final String command;
+
+        Entry(long number, String command) {
+            this.number = number;
+            this.command = command;
+        }
+    }
+
+    // A growable list of longs (command numbers), without boxing.
+    private static class LongList {
+        long[] values = new long[4];
+        int size;
+
+        void addIfNotLast(long value) {
+            if (size > 0 && values[size - 1] == value) {
+                return;
+            }
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+    }
+
+}
@@ -0,0 +1,256 @@
+// == IMPORTS =======================
+
+import java.util.Arrays;
+import java.util.function.Function;
+
+// == CLASS =======================
+// COMMAND LEXER | Splits a command line into tokens in one pass; handles quotes, escapes, $VARIABLES, '|' and '&'.
+public class CommandLexer {
+
+    // -- OBJECT FIELDS ---------------------
+
+    // These buffers are reused for every line, so lexing allocates little more than the tokens themselves.
+    private final StringBuilder tokenBuilder = new StringBuilder(64);
+    private final StringBuilder variableName = new StringBuilder(16);
+    private String[] tokenBuffer = new String[16];
+    private int tokenCount;
+
+    // The index of the first token of every pipeline stage ('|' separates the stages).
+    private int[] stageStarts = new int[4];
+    private int stageCount;
+
+    // Whether the last lexed line ended with '&' (run it in the background).
+    private boolean background;
+
+    // Looks up the value of a variable (returns null if there is no such variable).
+    private final Function<String, String> variableResolver;
+
+    // -- CONSTRUCTOR -------------------------
+
+    public CommandLexer(Function<String, String> variableResolver) {
+        this.variableResolver = variableResolver;
+    }
+
+    // -- LEXER METHODS ----------------------
+
+    // Returns the tokens of the given line (an empty array if the line is blank).
+    public String[] tokenize(CharSequence line) {
+        return Arrays.copyOf(tokenBuffer, lex(line));
+    }
+
+    // Returns the tokens of every pipeline stage of the given line (no stages if the line is blank).
+    public String[][] tokenizeStages(CharSequence line) {
+
+        // A blank line has no stages at all.
+        if (lex(line) == 0 && stageCount == 1) {
+            return new String[0][];
+        }
+
+        String[][] stages = new String[stageCount][];
+        for (int stageIndex = 0; stageIndex < stageCount; stageIndex++) {
+            int stageEnd = (stageIndex + 1 < stageCount) ? stageStarts[stageIndex + 1] : tokenCount;
+
+            // Every stage needs a command ('a | | b' and 'a |' are invalid).
+            if (stageEnd == stageStarts[stageIndex]) {
+                throw new IllegalArgumentException("Empty command in pipeline.");
+            }
+            stages[stageIndex] = Arrays.copyOfRange(tokenBuffer, stageStarts[stageIndex], stageEnd);
+        }
+        return stages;
+    }
+
+    // Lexes the line into the reused token buffer; returns the amount of tokens found.
+    public int lex(CharSequence line) {
+
+        tokenCount = 0;
+        tokenBuilder.setLength(0);
+        stageStarts[0] = 0;
+        stageCount = 1;
+        background = false;
+
+        // Whether a token has begun (needed so that "" still produces an empty token, while an empty $UNSET does not).
+        boolean inToken = false;
+        char quote = 0;
+        int length = line.length();
+
+        for (int charIndex = 0; charIndex < length; charIndex++) {
+            char character = line.charAt(charIndex);
+
+            // Inside single quotes everything is literal until the closing quote.
+            if (quote == '\'') {
+                if (character == '\'') {
+                    quote = 0;
+                } else {
+                    tokenBuilder.append(character);
+                }
+                continue;
+            }
+
+            // Inside double quotes only \", \\, \$ are escapes, and variables are still expanded.
+            if (quote == '"') {
+                if (character == '"') {
+                    quote = 0;
+                } else if (character == '\\' && charIndex + 1 < length && "\"\\$".indexOf(line.charAt(charIndex + 1)) != -1) {
+                    tokenBuilder.append(line.charAt(++charIndex));
+                } else if (character == '$') {
+                    charIndex = expandVariable(line, charIndex);
+                } else {
+                    tokenBuilder.append(character);
+                }
+                continue;
+            }
+
+            // Nothing but spaces may follow a '&'.
+            if (background && character != ' ' && character != '\t') {
+                throw new IllegalArgumentException("'&' can only be at the end of a command.");
+            }
+
+            // Outside of quotes.
+            switch (character) {
+                case ' ':
+                case '\t':
+                    if (inToken) {
+                        endToken();
+                        inToken = false;
+                    }
+                    break;
+
+                case '|':
+                    if (inToken) {
+                        endToken();
+                        inToken = false;
+                    }
+                    startStage();
+                    break;
+
+                case '&':
+                    if (inToken) {
+                        endToken();
+                        inToken = false;
+                    }
+                    background = true;
+                    break;
+
+                case '\'':
+                case '"':
+                    quote = character;
+                    inToken = true;
+                    break;
+
+                case '\\':
+                    // A backslash escapes any character; a trailing backslash is kept as it is.
+                    tokenBuilder.append(charIndex + 1 < length ? line.charAt(++charIndex) : '\\');
+                    inToken = true;
+                    break;
+
+                case '$':
+                    // An unquoted variable that expands to nothing makes no token of its own (like in bash).
+                    charIndex = expandVariable(line, charIndex);
+                    if (tokenBuilder.length() > 0) {
+                        inToken = true;
+                    }
+                    break;
+
+                default:
+                    tokenBuilder.append(character);
+                    inToken = true;
+            }
+        }
+
+        // A quote that is never closed makes the whole line invalid.
+        if (quote != 0) {
+            throw new IllegalArgumentException("Unterminated " + (quote == '"' ? "double" : "single") + " quote.");
+        }
+
+        if (inToken) {
+            endToken();
+        }
+
+        return tokenCount;
+    }
+
+    // Returns whether the last lexed line ended with '&'.
+    public boolean isBackground() {
+        return background;
+    }
+
+    // Returns the token at the given index of the last lexed line.
+    public String token(int tokenIndex) {
+        return tokenBuffer[tokenIndex];
+    }
+
+    // Moves the built token into the token buffer (growing the buffer if needed).
+    private void endToken() {
+        if (tokenCount == tokenBuffer.length) {
+            tokenBuffer = Arrays.copyOf(tokenBuffer, tokenBuffer.length * 2);
+        }
+        tokenBuffer[tokenCount++] = tokenBuilder.toString();
+        tokenBuilder.setLength(0);
+    }
+
+    // Marks that the next token begins a new pipeline stage.
+    private void startStage() {
+        if (stageCount == stageStarts.length) {
+            stageStarts = Arrays.copyOf(stageStarts, stageStarts.length * 2);
+        }
+        stageStarts[stageCount++] = tokenCount;
+    }
+
+    // Appends the value of the variable starting at the '$'; returns the index of the variable's last character.
+    private int expandVariable(CharSequence line, int dollarIndex) {
+
+        int length = line.length();
+        int nameStart = dollarIndex + 1;
+        variableName.setLength(0);
+
+        // ${NAME} form.
+        if (nameStart < length && line.charAt(nameStart) == '{') {
+            int closingIndex = nameStart + 1;
+            while (closingIndex < length && line.charAt(closingIndex) != '}') {
+                variableName.append(line.charAt(closingIndex++));
+            }
+            if (closingIndex == length) {
+                throw new IllegalArgumentException("Unterminated ${ in variable expansion.");
+            }
+            appendVariable();
+            return closingIndex;
+        }
+
+        // $? form (the exit status of the last command).
+        if (nameStart < length && line.charAt(nameStart) == '?') {
+            variableName.append('?');
+            appendVariable();
+            return nameStart;
+        }
+
+        // $NAME form: letters, digits and underscores (not starting with a digit).
+        int nameEnd = nameStart;
+        while (nameEnd < length) {
+            char character = line.charAt(nameEnd);
+            if (character == '_' || Character.isLetter(character) || (nameEnd > nameStart && Character.isDigit(character))) {
+                variableName.append(character);
+                nameEnd++;
+            } else {
+                break;
+            }
+        }
+
+        // A lone '$' is just a dollar sign.
+        if (nameEnd == nameStart) {
+            tokenBuilder.append('$');
+            return dollarIndex;
+        }
+
+        appendVariable();
+        return nameEnd - 1;
+    }
+
+    // Appends the value of the collected variable name (unknown variables expand to nothing).
+    private void appendVariable() {
+        String value = variableResolver.apply(variableName.toString());
+        if (value != null) {
+            tokenBuilder.append(value);
+        }
+    }
+
+}
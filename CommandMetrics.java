@@ -0,0 +1,393 @@
+// == IMPORTS =======================
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// == CLASS =======================
+// COMMAND METRICS | Times and counts every dispatched command, for 'stats', a periodic dump file and Java Flight Recorder.
+//
+// Every command has a latency histogram and counters (calls, failures, errors by exception type, file bytes read and
+// written) that any session thread updates without locking. Each command also becomes a 'pseudobash.Command' JFR
+// event, which costs nothing unless a recording is running (ex. java -XX:StartFlightRecording ... Main).
+public class CommandMetrics {
+
+    // -- CONSTANT / UTILITY VARIABLES ------
+
+    private static final Map<String, CommandStats> STATS = new ConcurrentHashMap<>();
+
+    // The command running on this thread, so the code reading or writing files can add its bytes to it.
+    private static final ThreadLocal<Invocation> CURRENT_INVOCATION = new ThreadLocal<>();
+
+    private static final ScheduledExecutorService DUMP_SCHEDULER = Executors.newSingleThreadScheduledExecutor(dumpTask -> {
+        Thread dumpThread = new Thread(dumpTask, "stats-dump");
+        dumpThread.setDaemon(true);
+        return dumpThread;
+    });
+    // Every dump file starts with this, so a dump only ever replaces an earlier dump, never other files.
+    static final String DUMP_HEADER = "pseudobash command statistics, written ";
+
+    private static ScheduledFuture<?> scheduledDump;
+    private static volatile LocalDateTime resetTime = LocalDateTime.now();
+
+    // -- COMMAND REGISTRATION ----------------
+
+    static void registerCommands(CommandRegistry registry) {
+        registry.register(Command.of("stats", 0, false, false,
+                "[ stats (none, reset, dump + file_name + seconds, dump + off) | Shows how often each command ran, how long it took, how it failed and the bytes it read and wrote; dump also writes that into a file every few seconds (needs resource safety off; only a new file or an earlier dump is replaced). ]",
+                (terminal, tokenizedCommand) -> {
+                    if (tokenizedCommand.length == 1) {
+                        terminal.getOutput().print(report());
+                    } else if (tokenizedCommand[1].equals("reset")) {
+                        reset();
+                        terminal.getOutput().println("The command statistics were reset.");
+                    } else if (tokenizedCommand[1].equals("dump") && tokenizedCommand.length == 3 && tokenizedCommand[2].equals("off")) {
+                        scheduleDump(terminal, null, 0);
+                    } else if (tokenizedCommand[1].equals("dump") && tokenizedCommand.length == 4) {
+                        scheduleDump(terminal, terminal.getWorkingDirectory().toPath().resolve(tokenizedCommand[2]).toAbsolutePath(), parseSeconds(tokenizedCommand[3]));
+                    } else {
+                        throw new IndexOutOfBoundsException();
+                    }
+                }));
+    }
+
+    // -- RECORDING METHODS ------------------
+
+    // Starts timing a command on this thread; finish the returned invocation once the command is done.
+    static Invocation start(String commandName) {
+        Invocation invocation = new Invocation(STATS.computeIfAbsent(commandName, CommandStats::new), CURRENT_INVOCATION.get());
+        CURRENT_INVOCATION.set(invocation);
+        return invocation;
+    }
+
+    // Adds file bytes read by the command running on this thread (if any).
+    static void addBytesRead(long bytes) {
+        Invocation invocation = CURRENT_INVOCATION.get();
+        if (invocation != null) {
+            invocation.bytesRead += bytes;
+        }
+    }
+
+    // Adds file bytes written by the command running on this thread (if any).
+    static void addBytesWritten(long bytes) {
+        Invocation invocation = CURRENT_INVOCATION.get();
+        if (invocation != null) {
+            invocation.bytesWritten += bytes;
+        }
+    }
+
+    // -- REPORT METHODS ---------------------
+
+    // Returns a table of every command that ran since the last reset (the slowest in total first), then their errors.
+    static String report() {
+        List<CommandStats> commands = new ArrayList<>(STATS.values());
+        commands.sort(Comparator.comparingLong((CommandStats stats) -> stats.totalNanos.sum()).reversed());
+
+        StringBuilder report = new StringBuilder();
+        report.append("Since ").append(Terminal.LISTING_DATE_FORMAT.format(resetTime)).append('\n');
+        if (commands.isEmpty()) {
+            return report.append("No commands have run yet.\n").toString();
+        }
+
+        report.append(String.format("%-12s %9s %7s %10s %10s %10s %10s %11s %10s %10s%n",
+                "COMMAND", "CALLS", "FAILED", "P50", "P90", "P99", "MAX", "TOTAL", "READ", "WRITTEN"));
+        for (CommandStats stats : commands) {
+            report.append(String.format("%-12s %,9d %,7d %10s %10s %10s %10s %11s %10s %10s%n",
+                    stats.name, stats.calls.sum(), stats.failures.sum(),
+                    formatNanos(stats.percentile(0.50)), formatNanos(stats.percentile(0.90)),
+                    formatNanos(stats.percentile(0.99)), formatNanos(stats.maxNanos.get()),
+                    formatNanos(stats.totalNanos.sum()),
+                    DiskUsage.formatBytes(stats.bytesRead.sum()), DiskUsage.formatBytes(stats.bytesWritten.sum())));
+        }
+
+        boolean errorsHeaderPrinted = false;
+        for (CommandStats stats : commands) {
+            for (Map.Entry<String, LongAdder> error : stats.errorsByType.entrySet()) {
+                if (!errorsHeaderPrinted) {
+                    report.append("\nERRORS\n");
+                    errorsHeaderPrinted = true;
+                }
+                report.append(String.format("%-12s %,9d  %s%n", stats.name, error.getValue().sum(), error.getKey()));
+            }
+        }
+        return report.toString();
+    }
+
+    private static void reset() {
+        STATS.clear();
+        resetTime = LocalDateTime.now();
+    }
+
+    // Writes the report into the file every few seconds from now on (replacing an earlier dump); a null file stops dumping.
+    private static synchronized void scheduleDump(Terminal terminal, Path file, long intervalSeconds) {
+        if (file == null) {
+            cancelDump();
+            terminal.getOutput().println("Stopped dumping the command statistics.");
+            return;
+        }
+        if (intervalSeconds < 1) {
+            throw new IndexOutOfBoundsException();
+        }
+
+        // Dumping writes a file, so it is a change to the resources like 'write'.
+        if (terminal.isResourceSafetyOn()) {
+            terminal.printError("Resource safety is currently on; cannot dump the statistics into a file. Use \"safety toggle\" to disable safety.");
+            return;
+        }
+        if (Files.exists(file) && !isDump(file)) {
+            terminal.printError("The file " + file.getFileName() + " is not an earlier statistics dump; it will not be replaced.");
+            return;
+        }
+
+        cancelDump();
+        scheduledDump = DUMP_SCHEDULER.scheduleAtFixedRate(() -> dump(file), 0, intervalSeconds, TimeUnit.SECONDS);
+        terminal.getOutput().println("Dumping the command statistics into " + file + " every " + intervalSeconds + " second(s).");
+    }
+
+    private static synchronized void cancelDump() {
+        if (scheduledDump != null) {
+            scheduledDump.cancel(false);
+            scheduledDump = null;
+        }
+    }
+
+    // Runs on the dump thread: replaces the file with the current report (through a temporary file, so it is never half
+    // written). Dumping stops if something else has taken the file's place since.
+    private static void dump(Path file) {
+        if (Files.exists(file) && !isDump(file)) {
+            cancelDump();
+            return;
+        }
+
+        Path temporaryFile = file.resolveSibling("." + file.getFileName() + "." + ProcessHandle.current().pid() + "-" + System.nanoTime() + ".tmp");
+        try {
+            Files.writeString(temporaryFile, DUMP_HEADER + LocalDateTime.now().withNano(0) + "\n" + report(), StandardCharsets.UTF_8, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+            Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            DirectoryCache.invalidate(file.getParent());
+        } catch (IOException e) {
+            // Try again at the next interval (ex. the directory is back).
+        } finally {
+            try {
+                Files.deleteIfExists(temporaryFile);
+            } catch (IOException e) {
+                // Left behind; it is hidden and named after this process.
+            }
+        }
+    }
+
+    // Returns whether the file was written by a dump (it starts with the dump header).
+    private static boolean isDump(Path file) {
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String firstLine = reader.readLine();
+            return firstLine != null && firstLine.startsWith(DUMP_HEADER);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    // -- HELPER METHODS ---------------------
+
+    private static long parseSeconds(String seconds) {
+        try {
+            return Long.parseLong(seconds);
+        } catch (NumberFormatException e) {
+            throw new IndexOutOfBoundsException();
+        }
+    }
+
+    // Formats a duration with 3 significant digits, like "850 ns", "12.4 us", "3.07 ms" or "1.20 s".
+    static String formatNanos(long nanos) {
+        if (nanos < 1_000) {
+            return nanos + " ns";
+        }
+        String[] units = {"us", "ms", "s"};
+        double value = nanos / 1_000.0;
+        int unitIndex = 0;
+        while (value >= 1_000 && unitIndex < units.length - 1) {
+            value /= 1_000;
+            unitIndex++;
+        }
+        return String.format(value >= 100 ? "%.0f %s" : value >= 10 ? "%.1f %s" : "%.2f %s", value, units[unitIndex]);
+    }
+
+    // -- NESTED CLASSES ---------------------
+
+    // One run of a command: started by start(), ended by finish() on the same thread.
+    static class Invocation {
+
+        private final CommandStats stats;
+        private final Invocation outerInvocation;
+        private final long startTime = System.nanoTime();
+        private final CommandEvent event = new CommandEvent();
+        long bytesRead, bytesWritten;
+
+        private Invocation(CommandStats stats, Invocation outerInvocation) {
+            this.stats = stats;
+            this.outerInvocation = outerInvocation;
+            event.begin();
+        }
+
+        // Records the run; failure is the exception that ended it (null if it ended normally, even when it failed).
+        void finish(boolean failed, Throwable failure) {
+            long elapsedNanos = System.nanoTime() - startTime;
+            stats.record(elapsedNanos, failed, failure, bytesRead, bytesWritten);
+
+            // A command run by another command on the same thread (ex. the commands 'benchmark' runs) also counts for the
+            // outer one's bytes. Pipeline stages and jobs run on threads of their own, so they only count for themselves.
+            if (outerInvocation != null) {
+                outerInvocation.bytesRead += bytesRead;
+                outerInvocation.bytesWritten += bytesWritten;
+            }
+            CURRENT_INVOCATION.set(outerInvocation);
+
+            event.end();
+            if (event.shouldCommit()) {
+                event.command = stats.name;
+                event.failed = failed;
+                event.exceptionType = failure == null ? null : failure.getClass().getName();
+                event.bytesRead = bytesRead;
+                event.bytesWritten = bytesWritten;
+                event.commit();
+            }
+        }
+    }
+
+    // The counters and the latency histogram of one command.
+    static class CommandStats {
+
+        final String name;
+        final LatencyHistogram latencies = new LatencyHistogram();
+        final LongAdder calls = new LongAdder(), failures = new LongAdder(), totalNanos = new LongAdder();
+        final LongAdder bytesRead = new LongAdder(), bytesWritten = new LongAdder();
+        final AtomicLong maxNanos = new AtomicLong();
+        final Map<String, LongAdder> errorsByType = new ConcurrentHashMap<>();
+
+        CommandStats(String name) {
+            this.name = name;
+        }
+
+        void record(long elapsedNanos, boolean failed, Throwable failure, long readBytes, long writtenBytes) {
+            calls.increment();
+            totalNanos.add(elapsedNanos);
+            latencies.record(elapsedNanos);
+            maxNanos.accumulateAndGet(elapsedNanos, Math::max);
+            if (failed) {
+                failures.increment();
+            }
+            if (failure != null) {
+                errorsByType.computeIfAbsent(failure.getClass().getSimpleName(), type -> new LongAdder()).increment();
+            }
+            bytesRead.add(readBytes);
+            bytesWritten.add(writtenBytes);
+        }
+
+        // A bucket's highest value can be above the slowest run itself; never report more than that.
+        long percentile(double fraction) {
+            return Math.min(latencies.percentile(fraction), maxNanos.get());
+        }
+    }
+
+    // Counts values into log-linear buckets, like an HDR histogram: 16 buckets per power of two, so any percentile is
+    // within about 6% of the real value. Recording is a single atomic increment; the buckets cover every long.
+    static class LatencyHistogram {
+
+        static final int SUB_BUCKET_BITS = 4, SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+        private final AtomicLongArray counts = new AtomicLongArray((64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS);
+
+        void record(long value) {
+            counts.incrementAndGet(bucketOf(Math.max(0, value)));
+        }
+
+        // Returns the highest value that falls in the same bucket as the given fraction of the values (0 if there are none).
+        long percentile(double fraction) {
+            long total = 0;
+            for (int bucket = 0; bucket < counts.length(); bucket++) {
+                total += counts.get(bucket);
+            }
+            if (total == 0) {
+                return 0;
+            }
+
+            long rank = Math.max(1, (long) Math.ceil(fraction * total)), seen = 0;
+            for (int bucket = 0; bucket < counts.length(); bucket++) {
+                seen += counts.get(bucket);
+                if (seen >= rank) {
+                    return highestValueOf(bucket);
+                }
+            }
+            return highestValueOf(counts.length() - 1);
+        }
+
+        // Values below 16 have a bucket each; above, a value's highest bit picks the group and the next 4 bits the bucket.
+        static int bucketOf(long value) {
+            if (value < SUB_BUCKETS) {
+                return (int) value;
+            }
+            int highestBit = 63 - Long.numberOfLeadingZeros(value);
+            int subBucket = (int) (value >>> (highestBit - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+            return (highestBit - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+        }
+
+        static long highestValueOf(int bucket) {
+            if (bucket < SUB_BUCKETS) {
+                return bucket;
+            }
+            int highestBit = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+            long lowestValue = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << (highestBit - SUB_BUCKET_BITS);
+            return lowestValue + (1L << (highestBit - SUB_BUCKET_BITS)) - 1;
+        }
+    }
+
+    // The JFR event of one command run.
+    @Name("pseudobash.Command")
+    @Label("Command")
+    @Category("Pseudobash")
+    @Description("A command run by a pseudobash session.")
+    @StackTrace(false)
+    static class CommandEvent extends Event {
+
+        @Label("Command")
+        String command;
+
+        @Label("Failed")
+        boolean failed;
+
+        @Label("Exception Type")
+        String exceptionType;
+
+        @Label("Bytes Read")
+        @DataAmount
+        long bytesRead;
+
+        @Label("Bytes Written")
+        @DataAmount
+        long bytesWritten;
+    }
+
+}
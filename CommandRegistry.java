@@ -0,0 +1,59 @@
+// == IMPORTS =======================
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// == CLASS =======================
+// COMMAND REGISTRY | Maps command names to their command objects; 'help', 'explain' and 'secrets' are generated from it.
+public class CommandRegistry {
+
+    // -- OBJECT FIELDS ---------------------
+
+    private final Map<String, Command> commandsByName = new HashMap<>();
+    private final List<Command> commands = new ArrayList<>(), secretCommands = new ArrayList<>();
+
+    // -- REGISTRY METHODS -------------------
+
+    // Adds a command; commands should be registered at startup, before any terminal session starts.
+    public synchronized void register(Command command) {
+
+        // Two commands cannot share a name.
+        if (commandsByName.containsKey(command.name())) {
+            throw new IllegalArgumentException("A command named \"" + command.name() + "\" is already registered.");
+        }
+
+        commandsByName.put(command.name(), command);
+
+        // Keep the registration order for the listings.
+        if (command.isSecret()) {
+            secretCommands.add(command);
+        } else {
+            commands.add(command);
+        }
+    }
+
+    // Returns the command with the given name (or null if there is none).
+    public Command lookup(String commandName) {
+        return commandsByName.get(commandName);
+    }
+
+    // Returns every regular (non-secret) command, in registration order.
+    public List<Command> listCommands() {
+        return Collections.unmodifiableList(commands);
+    }
+
+    // Returns every secret command, in registration order.
+    public List<Command> listSecretCommands() {
+        return Collections.unmodifiableList(secretCommands);
+    }
+
+    // Returns the name of every registered command (secret or not).
+    public Set<String> commandNames() {
+        return Collections.unmodifiableSet(commandsByName.keySet());
+    }
+
+}
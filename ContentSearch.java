@@ -0,0 +1,364 @@
+// == IMPORTS =======================
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+// == CLASS =======================
+// CONTENT SEARCH | Searches file contents for a regex; files are memory-mapped and split into chunks searched on every core.
+public class ContentSearch {
+
+    // -- CONSTANT / UTILITY VARIABLES ------
+
+    // Searching is decoding and matching (CPU work), so one thread per core.
+    static final ExecutorService SEARCH_POOL = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), searchTask -> {
+        Thread searchThread = new Thread(searchTask, "content-search");
+        searchThread.setDaemon(true);
+        return searchThread;
+    });
+
+    // Files bigger than this are split into chunks of this size (cut at line ends).
+    static final long CHUNK_BYTES = 4L << 20;
+
+    // At most this many chunks are searched (or waiting to be printed) at once.
+    static final int MAX_PENDING_CHUNKS = Runtime.getRuntime().availableProcessors() * 4;
+
+    // A NUL byte in the first few KB means the file is binary, so it is skipped.
+    static final int BINARY_CHECK_BYTES = 8192;
+
+    // -- OBJECT FIELDS ---------------------
+
+    private final Pattern pattern;
+    private final Path displayRoot;
+    private final PrintStream output;
+
+    // Line numbers of a file continue from chunk to chunk, so chunks are printed strictly in order.
+    private long lineOffset;
+
+    // -- CONSTRUCTOR -------------------------
+
+    // Matches are printed as "file:line:text", with the file relative to displayRoot.
+    public ContentSearch(Pattern pattern, Path displayRoot, PrintStream output) {
+        // '^' and '$' match at the start and end of every line, since the pattern runs over whole chunks of lines.
+        this.pattern = Pattern.compile(pattern.pattern(), pattern.flags() | Pattern.MULTILINE);
+        this.displayRoot = displayRoot;
+        this.output = output;
+    }
+
+    // -- COMMAND REGISTRATION ---------------
+
+    static void registerCommands(CommandRegistry registry) {
+        registry.register(Command.of("grep", 2, false, false,
+                "[ grep (pattern + file_name, directory_name + -r, -i) | Prints every line (as file:line:text) that matches the regex; -r searches subdirectories, -i ignores case. ]",
+                ContentSearch::grepCommand));
+    }
+
+    private static void grepCommand(Terminal terminal, String[] tokenizedCommand) throws IOException, InterruptedException {
+
+        // Sort the arguments into the pattern, the target and the options.
+        String patternText = null, targetName = null;
+        boolean recursive = false, ignoreCase = false;
+
+        for (int tokenIndex = 1; tokenIndex < tokenizedCommand.length; tokenIndex++) {
+            String token = tokenizedCommand[tokenIndex];
+            if (token.equals("-r")) {
+                recursive = true;
+            } else if (token.equals("-i")) {
+                ignoreCase = true;
+            } else if (patternText == null) {
+                patternText = token;
+            } else {
+                targetName = token;
+            }
+        }
+
+        if (targetName == null) {
+            throw new IndexOutOfBoundsException();
+        }
+
+        Pattern pattern;
+        try {
+            pattern = Pattern.compile(patternText, ignoreCase ? Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE : 0);
+        } catch (PatternSyntaxException e) {
+            terminal.printError("Invalid pattern: " + e.getDescription() + ".");
+            return;
+        }
+
+        Path workingDirectory = terminal.getWorkingDirectory().toPath();
+        Path target = workingDirectory.resolve(targetName);
+        if (!Files.exists(target)) {
+            terminal.printError("No such file or directory exists.");
+            return;
+        }
+
+        List<Path> files = Files.isDirectory(target) ? listFiles(target, recursive) : Collections.singletonList(target);
+        new ContentSearch(pattern, workingDirectory, terminal.getOutput()).search(files);
+    }
+
+    // -- SEARCH METHODS ---------------------
+
+    // Searches the files (in parallel, chunk by chunk) and prints the matches in file and line order; returns the amount of matches.
+    public long search(List<Path> files) throws IOException, InterruptedException {
+
+        Deque<PendingChunk> pendingChunks = new ArrayDeque<>();
+        long matchCount = 0;
+
+        try {
+            for (Path file : files) {
+                if (isBinary(file)) {
+                    continue;
+                }
+
+                long size = Files.size(file);
+                CommandMetrics.addBytesRead(size);
+                for (long chunkStart = 0; chunkStart < size; chunkStart += CHUNK_BYTES) {
+
+                    // Keep the amount of chunks in flight bounded; print the oldest one first.
+                    while (pendingChunks.size() >= MAX_PENDING_CHUNKS) {
+                        matchCount += printChunk(pendingChunks.poll());
+                    }
+
+                    long nominalStart = chunkStart, nominalEnd = Math.min(size, chunkStart + CHUNK_BYTES);
+                    pendingChunks.add(new PendingChunk(file, nominalStart == 0, SEARCH_POOL.submit(() -> searchChunk(file, nominalStart, nominalEnd, size))));
+                }
+            }
+
+            while (!pendingChunks.isEmpty()) {
+                matchCount += printChunk(pendingChunks.poll());
+            }
+        } finally {
+
+            // Interrupted, or the output failed; stop whatever is still running.
+            for (PendingChunk pendingChunk : pendingChunks) {
+                pendingChunk.result.cancel(true);
+            }
+        }
+
+        output.flush();
+        return matchCount;
+    }
+
+    // Waits for the chunk, then prints its matches with their line numbers in the file.
+    private int printChunk(PendingChunk pendingChunk) throws IOException, InterruptedException {
+        ChunkResult chunkResult;
+        try {
+            chunkResult = pendingChunk.result.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+
+        if (pendingChunk.firstOfFile) {
+            lineOffset = 0;
+        }
+        String fileName = displayRoot.relativize(pendingChunk.file).toString();
+        for (int matchIndex = 0; matchIndex < chunkResult.lineNumbers.size(); matchIndex++) {
+            output.println(fileName + ":" + (lineOffset + chunkResult.lineNumbers.get(matchIndex)) + ":" + chunkResult.lines.get(matchIndex));
+        }
+        lineOffset += chunkResult.lineCount;
+        return chunkResult.lines.size();
+    }
+
+    // Searches the lines that start inside [nominalStart, nominalEnd) of the file (the last one may run past the end).
+    private ChunkResult searchChunk(Path file, long nominalStart, long nominalEnd, long size) throws IOException {
+        ChunkResult chunkResult = new ChunkResult();
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long start = nextLineStart(channel, nominalStart, size), end = nextLineStart(channel, nominalEnd, size);
+            if (start >= end) {
+                return chunkResult;
+            }
+
+            // Map the chunk and decode it once; the regex then runs over the whole chunk instead of line by line (a match
+            // that spans lines is checked again against its first line alone).
+            ByteBuffer mappedChunk = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(end - start, Integer.MAX_VALUE));
+            CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            CharBuffer text = decoder.decode(mappedChunk);
+
+            Matcher matcher = pattern.matcher(text), lineMatcher = pattern.matcher(text);
+            int countedUpTo = 0, lineNumber = 1, searchFrom = 0;
+            while (searchFrom < text.length() && matcher.find(searchFrom)) {
+                if (Thread.currentThread().isInterrupted()) {
+                    break;
+                }
+
+                int lineStart = lastIndexOf(text, '\n', matcher.start() - 1) + 1;
+                int lineEnd = indexOf(text, '\n', matcher.start());
+                if (lineEnd < 0) {
+                    lineEnd = text.length();
+                }
+
+                int printedEnd = (lineEnd > lineStart && text.charAt(lineEnd - 1) == '\r') ? lineEnd - 1 : lineEnd;
+
+                // A match that runs past the end of its line (ex. '\s' taking the newline) does not count; the line
+                // matches only if the pattern matches within the line alone.
+                if (matcher.end() > printedEnd && !lineMatcher.region(lineStart, printedEnd).find()) {
+                    searchFrom = lineEnd + 1;
+                    continue;
+                }
+
+                lineNumber += countNewlines(text, countedUpTo, lineStart);
+                countedUpTo = lineStart;
+
+                chunkResult.lineNumbers.add((long) lineNumber);
+                chunkResult.lines.add(text.subSequence(lineStart, printedEnd).toString());
+
+                // One match per line; continue with the next line.
+                searchFrom = lineEnd + 1;
+            }
+
+            chunkResult.lineCount = lineNumber - 1 + countNewlines(text, countedUpTo, text.length());
+        }
+        return chunkResult;
+    }
+
+    // -- HELPER METHODS ---------------------
+
+    // Returns where the first line that starts at or after the position begins (the size if there is none).
+    private static long nextLineStart(FileChannel channel, long position, long size) throws IOException {
+        if (position <= 0 || position >= size) {
+            return Math.max(0, Math.min(position, size));
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(8192);
+        long readPosition = position - 1;
+        while (readPosition < size) {
+            buffer.clear();
+            int read = channel.read(buffer, readPosition);
+            if (read <= 0) {
+                break;
+            }
+            for (int byteIndex = 0; byteIndex < read; byteIndex++) {
+                if (buffer.get(byteIndex) == '\n') {
+                    return readPosition + byteIndex + 1;
+                }
+            }
+            readPosition += read;
+        }
+        return size;
+    }
+
+    // A file is treated as binary if its first bytes contain a NUL.
+    static boolean isBinary(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(BINARY_CHECK_BYTES);
+            channel.read(buffer, 0);
+            for (int byteIndex = 0; byteIndex < buffer.position(); byteIndex++) {
+                if (buffer.get(byteIndex) == 0) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    // Lists the regular files in the directory (and its subdirectories if recursive), sorted by name, without following links.
+    static List<Path> listFiles(Path directory, boolean recursive) throws IOException {
+        List<Path> files = new ArrayList<>();
+        Deque<Path> pendingDirectories = new ArrayDeque<>();
+        pendingDirectories.push(directory);
+
+        while (!pendingDirectories.isEmpty()) {
+            List<Path> entries = new ArrayList<>();
+            try (DirectoryStream<Path> directoryEntries = Files.newDirectoryStream(pendingDirectories.pop())) {
+                directoryEntries.forEach(entries::add);
+            } catch (IOException | DirectoryIteratorException e) {
+                // Unreadable directories are skipped.
+                continue;
+            }
+            Collections.sort(entries);
+
+            // Subdirectories are pushed in reverse so they are searched in name order.
+            for (int entryIndex = entries.size() - 1; entryIndex >= 0; entryIndex--) {
+                Path entry = entries.get(entryIndex);
+                if (recursive && Files.isDirectory(entry, LinkOption.NOFOLLOW_LINKS)) {
+                    pendingDirectories.push(entry);
+                }
+            }
+            for (Path entry : entries) {
+                if (Files.isRegularFile(entry, LinkOption.NOFOLLOW_LINKS)) {
+                    files.add(entry);
+                }
+            }
+        }
+        return files;
+    }
+
+    private static int indexOf(CharSequence text, char character, int from) {
+        for (int charIndex = from; charIndex < text.length(); charIndex++) {
+            if (text.charAt(charIndex) == character) {
+                return charIndex;
+            }
+        }
+        return -1;
+    }
+
+    private static int lastIndexOf(CharSequence text, char character, int from) {
+        for (int charIndex = from; charIndex >= 0; charIndex--) {
+            if (text.charAt(charIndex) == character) {
+                return charIndex;
+            }
+        }
+        return -1;
+    }
+
+    private static int countNewlines(CharSequence text, int from, int to) {
+        int newlines = 0;
+        for (int charIndex = from; charIndex < to; charIndex++) {
+            if (text.charAt(charIndex) == '\n') {
+                newlines++;
+            }
+        }
+        return newlines;
+    }
+
+    // -- NESTED CLASSES ---------------------
+
+    // A chunk being searched, in the order it has to be printed.
+    private static class PendingChunk {
+        final Path file;
+        final boolean firstOfFile;
+        final Future<ChunkResult> result;
+
+        PendingChunk(Path file, boolean firstOfFile, Future<ChunkResult> result) {
+            this.file = file;
+            this.firstOfFile = firstOfFile;
+            this.result = result;
+        }
+    }
+
+    // The matching lines of a chunk (numbered from the chunk's first line), and how many lines the chunk has.
+    private static class ChunkResult {
+        final List<Long> lineNumbers = new ArrayList<>();
+        final List<String> lines = new ArrayList<>();
+        long lineCount;
+    }
+
+}
@@ -0,0 +1,305 @@
+// == IMPORTS =======================
+
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.DosFileAttributes;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// == CLASS =======================
+// DIRECTORY CACHE | Remembers directory listings (names and attributes) so navigating does not hit the disk every time.
+//
+// A listing is dropped when the watch service reports a change in its directory, when a command changes resources,
+// or when the least recently used listings make room. Changes the watch service cannot see (ex. made by another
+// machine on a network drive) are caught by re-checking the directory's modification time every few seconds.
+public class DirectoryCache {
+
+    // -- CONSTANT / UTILITY VARIABLES ------
+
+    static final int MAX_CACHED_DIRECTORIES = 256;
+    static final long REVALIDATE_INTERVAL_MILLIS = 2000;
+
+    // Read every entry's attributes with one call, as the richest kind the filesystem supports.
+    private static final Class<? extends BasicFileAttributes> ATTRIBUTE_TYPE = attributeType();
+
+    private static final Map<Path, Listing> LISTINGS = new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Path, Listing> eldest) {
+            if (size() > MAX_CACHED_DIRECTORIES) {
+                stopWatching(eldest.getValue());
+                return true;
+            }
+            return false;
+        }
+    };
+
+    private static final Map<WatchKey, Path> WATCHED_DIRECTORIES = new HashMap<>();
+    private static WatchService watcher;
+
+    // -- CACHE METHODS ----------------------
+
+    // Returns the listing of the directory, from memory if it is still up to date.
+    static Listing list(Path directory) throws IOException {
+        directory = directory.toAbsolutePath().normalize();
+
+        Listing listing;
+        synchronized (LISTINGS) {
+            listing = LISTINGS.get(directory);
+        }
+
+        if (listing != null) {
+            long now = System.currentTimeMillis();
+            if (now - listing.checkedTime < REVALIDATE_INTERVAL_MILLIS) {
+                return listing;
+            }
+
+            // Every so often, make sure nothing changed behind the watch service's back (one stat instead of a listing).
+            if (Files.getLastModifiedTime(directory).toMillis() == listing.modifiedTime) {
+                listing.checkedTime = now;
+                return listing;
+            }
+        }
+
+        listing = load(directory);
+        synchronized (LISTINGS) {
+            LISTINGS.put(directory, listing);
+        }
+        return listing;
+    }
+
+    // Returns the entry for the resource (from its directory's listing), or null if it does not exist.
+    static Entry find(Path resource) {
+        resource = resource.toAbsolutePath().normalize();
+
+        try {
+            // The root has no directory to be listed in.
+            if (resource.getParent() == null) {
+                return new Entry(resource.toString(), Files.readAttributes(resource, ATTRIBUTE_TYPE));
+            }
+            return list(resource.getParent()).entry(resource.getFileName().toString());
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    // Forgets the directory's listing (ex. after changing something in it).
+    static void invalidate(Path directory) {
+        synchronized (LISTINGS) {
+            Listing listing = LISTINGS.remove(directory.toAbsolutePath().normalize());
+            if (listing != null) {
+                stopWatching(listing);
+            }
+        }
+    }
+
+    // Forgets every listing (ex. after a command that can change resources anywhere).
+    static void invalidateAll() {
+        synchronized (LISTINGS) {
+            for (Listing listing : LISTINGS.values()) {
+                stopWatching(listing);
+            }
+            LISTINGS.clear();
+        }
+    }
+
+    // -- HELPER METHODS ---------------------
+
+    // Lists the directory and reads each entry's attributes once; then watches the directory for changes.
+    private static Listing load(Path directory) throws IOException {
+        long modifiedTime = Files.getLastModifiedTime(directory).toMillis();
+        List<Entry> entries = new ArrayList<>();
+
+        try (DirectoryStream<Path> directoryEntries = Files.newDirectoryStream(directory)) {
+            for (Path entry : directoryEntries) {
+                BasicFileAttributes attributes;
+                try {
+                    attributes = Files.readAttributes(entry, ATTRIBUTE_TYPE);
+                } catch (IOException e) {
+
+                    // A broken symbolic link; describe the link itself.
+                    attributes = Files.readAttributes(entry, ATTRIBUTE_TYPE, LinkOption.NOFOLLOW_LINKS);
+                }
+                entries.add(new Entry(entry.getFileName().toString(), attributes));
+            }
+        } catch (DirectoryIteratorException e) {
+            throw e.getCause();
+        }
+
+        Listing listing = new Listing(directory, modifiedTime, entries);
+        listing.watchKey = startWatching(directory);
+        return listing;
+    }
+
+    // Registers the directory with the watch service (started on first use); returns null if it cannot be watched.
+    private static synchronized WatchKey startWatching(Path directory) {
+        try {
+            if (watcher == null) {
+                watcher = directory.getFileSystem().newWatchService();
+                Thread watcherThread = new Thread(DirectoryCache::processWatchEvents, "directory-cache-watcher");
+                watcherThread.setDaemon(true);
+                watcherThread.start();
+            }
+            WatchKey watchKey = directory.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+            WATCHED_DIRECTORIES.put(watchKey, directory);
+            return watchKey;
+        } catch (IOException | UnsupportedOperationException e) {
+
+            // Only the modification time checks keep this listing up to date.
+            return null;
+        }
+    }
+
+    private static synchronized void stopWatching(Listing listing) {
+        if (listing.watchKey != null) {
+            listing.watchKey.cancel();
+            WATCHED_DIRECTORIES.remove(listing.watchKey);
+        }
+    }
+
+    // Runs on the watcher thread: drops the listing of every directory that reports a change.
+    private static void processWatchEvents() {
+        while (true) {
+            WatchKey watchKey;
+            try {
+                watchKey = watcher.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+
+            watchKey.pollEvents();
+            Path directory;
+            synchronized (DirectoryCache.class) {
+                directory = WATCHED_DIRECTORIES.get(watchKey);
+            }
+            if (directory != null) {
+                invalidate(directory);
+            }
+            watchKey.reset();
+        }
+    }
+
+    private static Class<? extends BasicFileAttributes> attributeType() {
+        Set<String> supportedViews = FileSystems.getDefault().supportedFileAttributeViews();
+        if (supportedViews.contains("posix")) {
+            return PosixFileAttributes.class;
+        }
+        if (supportedViews.contains("dos")) {
+            return DosFileAttributes.class;
+        }
+        return BasicFileAttributes.class;
+    }
+
+    // -- NESTED CLASSES ---------------------
+
+    // The entries of one directory, as they were when it was listed.
+    public static class Listing {
+
+        final Path directory;
+        final long modifiedTime;
+        final List<Entry> entries;
+        private final Map<String, Entry> entriesByName = new HashMap<>();
+        private String[] sortedNames;
+        volatile long checkedTime = System.currentTimeMillis();
+        WatchKey watchKey;
+
+        Listing(Path directory, long modifiedTime, List<Entry> entries) {
+            this.directory = directory;
+            this.modifiedTime = modifiedTime;
+            this.entries = Collections.unmodifiableList(entries);
+            for (Entry entry : entries) {
+                entriesByName.put(entry.name, entry);
+            }
+        }
+
+        // Returns the entry with that name, or null if there is none.
+        Entry entry(String name) {
+            return entriesByName.get(name);
+        }
+
+        // Returns the names starting with the prefix, in sorted order (the names are sorted once per listing,
+        // after that this is two binary searches however large the directory is).
+        synchronized List<String> namesStartingWith(String prefix) {
+            if (sortedNames == null) {
+                sortedNames = new String[entries.size()];
+                for (int entryIndex = 0; entryIndex < sortedNames.length; entryIndex++) {
+                    sortedNames[entryIndex] = entries.get(entryIndex).name;
+                }
+                Arrays.sort(sortedNames);
+            }
+
+            int first = insertionPoint(prefix);
+            int end = insertionPoint(prefix + Character.MAX_VALUE);
+            return Collections.unmodifiableList(Arrays.asList(sortedNames).subList(first, end));
+        }
+
+        private int insertionPoint(String name) {
+            int index = Arrays.binarySearch(sortedNames, name);
+            return index >= 0 ? index : -index - 1;
+        }
+    }
+
+    // One resource in a listing: its name and its attributes (Posix or DOS ones when the filesystem has them).
+    public static class Entry {
+
+        final String name;
+        final BasicFileAttributes attributes;
+
+        // Kept as plain values so sorting large listings does not call into the attributes over and over.
+        final String sortName;
+        final long size, modifiedTime;
+        private String permissions;
+
+        Entry(String name, BasicFileAttributes attributes) {
+            this.name = name;
+            this.attributes = attributes;
+            this.sortName = name.toLowerCase();
+            this.size = attributes.size();
+            this.modifiedTime = attributes.lastModifiedTime().toMillis();
+        }
+
+        boolean isDirectory() {
+            return attributes.isDirectory();
+        }
+
+        boolean isFile() {
+            return attributes.isRegularFile();
+        }
+
+        boolean isHidden() {
+            return name.startsWith(".") || (attributes instanceof DosFileAttributes && ((DosFileAttributes) attributes).isHidden());
+        }
+
+        // Returns the type (d: directory, l: link, -: file) followed by the permissions, like "drwxr-xr-x" (worked out once).
+        String permissions() {
+            if (permissions == null) {
+                char type = attributes.isDirectory() ? 'd' : attributes.isSymbolicLink() ? 'l' : attributes.isRegularFile() ? '-' : '?';
+                if (attributes instanceof PosixFileAttributes) {
+                    permissions = type + PosixFilePermissions.toString(((PosixFileAttributes) attributes).permissions());
+                } else if (attributes instanceof DosFileAttributes) {
+                    permissions = type + (((DosFileAttributes) attributes).isReadOnly() ? "r--r--r--" : "rw-rw-rw-");
+                } else {
+                    permissions = type + "?????????";
+                }
+            }
+            return permissions;
+        }
+    }
+
+}
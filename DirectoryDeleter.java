@@ -0,0 +1,242 @@
+// == IMPORTS =======================
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+// == CLASS =======================
+// DIRECTORY DELETER | Deletes a directory tree with subtrees deleted in parallel; reports progress and failures.
+public class DirectoryDeleter {
+
+    // -- CONSTANT / UTILITY VARIABLES ------
+
+    // Deleting is mostly waiting on the disk, so use more threads than cores.
+    static final ForkJoinPool DELETE_POOL = new ForkJoinPool(Math.max(4, Runtime.getRuntime().availableProcessors() * 2));
+
+    // Below this depth subtrees become their own tasks; deeper ones are deleted iteratively (no stack overflow).
+    static final int MAX_FORK_DEPTH = 32;
+
+    // How often progress is printed while deleting, and how many failures are listed at most.
+    static final long PROGRESS_INTERVAL_MILLIS = 1000;
+    static final int MAX_LISTED_FAILURES = 20;
+
+    // -- OBJECT FIELDS ---------------------
+
+    private final LongAdder deletedFiles = new LongAdder(), deletedDirectories = new LongAdder();
+    private final Queue<String> failures = new ConcurrentLinkedQueue<>();
+    private volatile boolean cancelled;
+
+    // -- DELETER METHODS --------------------
+
+    // Deletes the directory and everything inside it; prints progress every second if it takes that long. A symbolic
+    // link to a directory is only unlinked; what it points to is left alone.
+    public Summary deleteTree(Path rootDirectory, PrintStream progressOutput) throws InterruptedException {
+
+        long startTime = System.nanoTime();
+        if (Files.isSymbolicLink(rootDirectory)) {
+            deleteEntry(rootDirectory, false);
+            return new Summary(deletedFiles.sum(), deletedDirectories.sum(), System.nanoTime() - startTime, new ArrayList<>(failures));
+        }
+
+        ForkJoinTask<Void> rootTask = DELETE_POOL.submit(new SubtreeTask(rootDirectory, 0));
+
+        while (true) {
+            try {
+                rootTask.get(PROGRESS_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+                break;
+            } catch (TimeoutException e) {
+                double seconds = (System.nanoTime() - startTime) / 1e9;
+                progressOutput.printf("Deleting... %,d files so far (%,.0f files/sec)%n", deletedFiles.sum(), deletedFiles.sum() / seconds);
+                progressOutput.flush();
+            } catch (InterruptedException e) {
+
+                // Stop every task at its next entry, then let the caller know.
+                cancelled = true;
+                rootTask.quietlyJoin();
+                throw e;
+            } catch (ExecutionException e) {
+                failures.add(rootDirectory + ": " + e.getCause());
+                break;
+            }
+        }
+
+        return new Summary(deletedFiles.sum(), deletedDirectories.sum(), System.nanoTime() - startTime, new ArrayList<>(failures));
+    }
+
+    // Deletes the resource (and everything inside it) on the calling thread only; for background work.
+    public Summary deleteTreeSequentially(Path resource) {
+
+        long startTime = System.nanoTime();
+        if (Files.isDirectory(resource, LinkOption.NOFOLLOW_LINKS)) {
+            deleteIteratively(resource);
+        } else {
+            deleteEntry(resource, false);
+        }
+
+        return new Summary(deletedFiles.sum(), deletedDirectories.sum(), System.nanoTime() - startTime, new ArrayList<>(failures));
+    }
+
+    // Deletes one file, symbolic link or (empty) directory, remembering why if it fails.
+    private void deleteEntry(Path entry, boolean isDirectory) {
+        try {
+            Files.delete(entry);
+            (isDirectory ? deletedDirectories : deletedFiles).increment();
+        } catch (IOException e) {
+            failures.add(entry + ": " + describeFailure(e));
+        }
+    }
+
+    // Deletes a (very deep) subtree without recursion, using an explicit stack of directories.
+    private void deleteIteratively(Path subtreeRoot) {
+
+        Deque<Path> directories = new ArrayDeque<>();
+        Deque<Boolean> listed = new ArrayDeque<>();
+        directories.push(subtreeRoot);
+        listed.push(false);
+
+        while (!directories.isEmpty() && !cancelled) {
+            Path directory = directories.peek();
+
+            // Second visit: every child has been handled, so the directory itself can go.
+            if (listed.peek()) {
+                directories.pop();
+                listed.pop();
+                deleteEntry(directory, true);
+                continue;
+            }
+
+            // First visit: delete the files and queue the subdirectories.
+            listed.pop();
+            listed.push(true);
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+                for (Path entry : entries) {
+                    if (Files.isDirectory(entry, LinkOption.NOFOLLOW_LINKS)) {
+                        directories.push(entry);
+                        listed.push(false);
+                    } else {
+                        deleteEntry(entry, false);
+                    }
+                }
+            } catch (IOException e) {
+                failures.add(directory + ": " + describeFailure(e));
+            } catch (DirectoryIteratorException e) {
+                failures.add(directory + ": " + describeFailure(e.getCause()));
+            }
+        }
+    }
+
+    // Turns an IOException into a short reason (ex. "access denied").
+    private static String describeFailure(IOException e) {
+        String exceptionName = e.getClass().getSimpleName();
+        switch (exceptionName) {
+            case "AccessDeniedException":
+                return "access denied";
+            case "DirectoryNotEmptyException":
+                return "directory not empty";
+            case "NoSuchFileException":
+                return "no longer exists";
+            default:
+                return exceptionName + (e.getMessage() == null ? "" : " (" + e.getMessage() + ")");
+        }
+    }
+
+    // -- NESTED CLASSES ---------------------
+
+    // Deletes the files of one directory, forks a task per subdirectory, then deletes the directory.
+    private class SubtreeTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Path directory;
+        private final int depth;
+
+        SubtreeTask(Path directory, int depth) {
+            this.directory = directory;
+            this.depth = depth;
+        }
+
+        @Override
+        protected void compute() {
+            List<SubtreeTask> subtreeTasks = new ArrayList<>();
+
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+                for (Path entry : entries) {
+                    if (cancelled) {
+                        break;
+                    }
+
+                    // Symbolic links are deleted as links; the directories they point to are left alone.
+                    if (!Files.isDirectory(entry, LinkOption.NOFOLLOW_LINKS)) {
+                        deleteEntry(entry, false);
+                    } else if (depth < MAX_FORK_DEPTH) {
+                        SubtreeTask subtreeTask = new SubtreeTask(entry, depth + 1);
+                        subtreeTask.fork();
+                        subtreeTasks.add(subtreeTask);
+                    } else {
+                        deleteIteratively(entry);
+                    }
+                }
+            } catch (IOException e) {
+                failures.add(directory + ": " + describeFailure(e));
+            } catch (DirectoryIteratorException e) {
+                failures.add(directory + ": " + describeFailure(e.getCause()));
+            }
+
+            for (SubtreeTask subtreeTask : subtreeTasks) {
+                subtreeTask.join();
+            }
+            if (!cancelled) {
+                deleteEntry(directory, true);
+            }
+        }
+    }
+
+    // What a deletion did: counts, time taken and every resource that could not be deleted.
+    public static class Summary {
+
+        final long deletedFiles, deletedDirectories, elapsedNanos;
+        final List<String> failures;
+
+        Summary(long deletedFiles, long deletedDirectories, long elapsedNanos, List<String> failures) {
+            this.deletedFiles = deletedFiles;
+            this.deletedDirectories = deletedDirectories;
+            this.elapsedNanos = elapsedNanos;
+            this.failures = failures;
+        }
+
+        // Prints the counts, then (as errors) the resources that could not be deleted.
+        void print(Terminal terminal) {
+            double seconds = elapsedNanos / 1e9;
+            terminal.getOutput().printf("Deleted %,d files and %,d directories in %.2fs (%,.0f files/sec).%n",
+                    deletedFiles, deletedDirectories, seconds, deletedFiles / Math.max(seconds, 1e-9));
+
+            if (!failures.isEmpty()) {
+                terminal.printError("Could not delete " + failures.size() + " resource(s):");
+                for (int failureIndex = 0; failureIndex < Math.min(failures.size(), MAX_LISTED_FAILURES); failureIndex++) {
+                    terminal.getOutput().println("  " + failures.get(failureIndex));
+                }
+                if (failures.size() > MAX_LISTED_FAILURES) {
+                    terminal.getOutput().println("  ... and " + (failures.size() - MAX_LISTED_FAILURES) + " more.");
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,370 @@
+// == IMPORTS =======================
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+// == CLASS =======================
+// DISK USAGE | Adds up the size of directory trees in parallel ('du', 'whatis'); directory contents are cached by modification time.
+//
+// A directory's modification time only changes when entries are added, removed or renamed in it, so a file that
+// grows in place is only noticed once something else in its directory changes. That is why every command that changes
+// resources (ex. 'write --append') empties the cache; only changes made outside pseudobash can go unnoticed.
+public class DiskUsage {
+
+    // -- CONSTANT / UTILITY VARIABLES ------
+
+    // Measuring is mostly waiting on the disk, so use more threads than cores.
+    static final ForkJoinPool SIZE_POOL = new ForkJoinPool(Math.max(4, Runtime.getRuntime().availableProcessors() * 2));
+
+    // Below this depth subdirectories become their own tasks; deeper ones are added up iteratively (no stack overflow).
+    static final int MAX_FORK_DEPTH = 32;
+
+    // The cache is emptied once it holds this many directories, so it cannot grow without bound.
+    static final int MAX_CACHED_DIRECTORIES = 200_000;
+
+    static final long PROGRESS_INTERVAL_MILLIS = 1000;
+    static final int DEFAULT_TOP_COUNT = 10;
+
+    // What each directory directly contains, with the modification time it was listed at.
+    private static final Map<Path, DirectoryContents> CONTENTS_CACHE = new ConcurrentHashMap<>();
+
+    // -- OBJECT FIELDS ---------------------
+
+    private final LongAdder scannedFiles = new LongAdder(), listedDirectories = new LongAdder(), reusedDirectories = new LongAdder();
+    private volatile boolean cancelled;
+
+    // -- COMMAND REGISTRATION ---------------
+
+    static void registerCommands(CommandRegistry registry) {
+        registry.register(Command.of("du", 0, false, false,
+                "[ du (none, directory_name + --top N) | Prints the total size, file count and newest change of a directory; --top lists its largest subdirectories. ]",
+                DiskUsage::duCommand));
+
+        registry.register(Command.of("whatis", 1, false, false,
+                "[ whatis (resource_name) | Prints the details of a file or directory (size, dates, permissions, contents). ]",
+                (terminal, tokenizedCommand) -> describeResource(terminal, terminal.getWorkingDirectory().toPath().resolve(tokenizedCommand[1]))));
+    }
+
+    private static void duCommand(Terminal terminal, String[] tokenizedCommand) throws InterruptedException {
+
+        // Sort the arguments into the directory and the options.
+        String directoryName = null;
+        int topCount = 0;
+        for (int tokenIndex = 1; tokenIndex < tokenizedCommand.length; tokenIndex++) {
+            if (tokenizedCommand[tokenIndex].equalsIgnoreCase("--top")) {
+                try {
+                    topCount = (tokenIndex + 1 < tokenizedCommand.length) ? Integer.parseInt(tokenizedCommand[++tokenIndex]) : DEFAULT_TOP_COUNT;
+                } catch (NumberFormatException e) {
+                    throw new IndexOutOfBoundsException();
+                }
+                if (topCount < 1) {
+                    throw new IndexOutOfBoundsException();
+                }
+            } else {
+                directoryName = tokenizedCommand[tokenIndex];
+            }
+        }
+
+        File directory = (directoryName == null) ? terminal.getWorkingDirectory() : new File(terminal.getWorkingDirectory(), directoryName);
+        if (!directory.isDirectory()) {
+            terminal.printError("No such directory exists.");
+            return;
+        }
+
+        long startTime = System.nanoTime();
+        DiskUsage diskUsage = new DiskUsage();
+        Totals totals = diskUsage.measure(directory.toPath().toAbsolutePath().normalize(), terminal.getOutput());
+        PrintStream output = terminal.getOutput();
+
+        output.printf("%s in %,d files and %,d directories; newest change %s.%n",
+                formatBytes(totals.bytes), totals.files, totals.directories, formatTime(totals.newestModified));
+        output.printf("(%.2fs; %,d directories listed, %,d unchanged since last time)%n",
+                (System.nanoTime() - startTime) / 1e9, diskUsage.listedDirectories.sum(), diskUsage.reusedDirectories.sum());
+
+        // The largest subdirectories, biggest first.
+        if (topCount > 0 && !totals.subdirectories.isEmpty()) {
+            List<Map.Entry<String, Totals>> subdirectories = new ArrayList<>(totals.subdirectories.entrySet());
+            subdirectories.sort((first, second) -> Long.compare(second.getValue().bytes, first.getValue().bytes));
+
+            output.println("Largest subdirectories:");
+            for (Map.Entry<String, Totals> subdirectory : subdirectories.subList(0, Math.min(topCount, subdirectories.size()))) {
+                output.printf("  %10s  %,12d files  %s%n", formatBytes(subdirectory.getValue().bytes), subdirectory.getValue().files, subdirectory.getKey());
+            }
+        }
+    }
+
+    // Prints what kind of resource it is, its size and dates, its permissions, and (for a directory) what it contains.
+    private static void describeResource(Terminal terminal, Path resource) throws IOException, InterruptedException {
+        resource = resource.toAbsolutePath().normalize();
+        if (!Files.exists(resource, LinkOption.NOFOLLOW_LINKS)) {
+            terminal.printError("No such resource exists.");
+            return;
+        }
+
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(resource, PosixFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        } catch (UnsupportedOperationException e) {
+            attributes = Files.readAttributes(resource, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        }
+
+        PrintStream output = terminal.getOutput();
+        output.println("Name:        " + (resource.getFileName() == null ? resource : resource.getFileName()));
+        output.println("Location:    " + (resource.getParent() == null ? "-" : resource.getParent()));
+        output.println("Type:        " + (attributes.isDirectory() ? "directory" : attributes.isSymbolicLink() ? "symbolic link -> " + Files.readSymbolicLink(resource)
+                : attributes.isRegularFile() ? "file" + contentTypeOf(resource) : "other"));
+        output.println("Created:     " + formatTime(attributes.creationTime()));
+        output.println("Modified:    " + formatTime(attributes.lastModifiedTime()));
+        output.println("Accessed:    " + formatTime(attributes.lastAccessTime()));
+        if (attributes instanceof PosixFileAttributes) {
+            PosixFileAttributes posixAttributes = (PosixFileAttributes) attributes;
+            output.println("Permissions: " + PosixFilePermissions.toString(posixAttributes.permissions()) + " (owner " + posixAttributes.owner().getName() + ", group " + posixAttributes.group().getName() + ")");
+        }
+        output.println("Hidden:      " + (Files.isHidden(resource) ? "yes" : "no"));
+
+        if (!attributes.isDirectory()) {
+            output.printf("Size:        %s (%,d bytes)%n", formatBytes(attributes.size()), attributes.size());
+            return;
+        }
+
+        // Directories: what is directly inside, then the totals of the whole tree.
+        DiskUsage diskUsage = new DiskUsage();
+        DirectoryContents contents = diskUsage.contentsOf(resource);
+        if (contents != null) {
+            output.printf("Items:       %,d (%,d directories, %,d files)%n",
+                    contents.subdirectories.size() + contents.fileCount, contents.subdirectories.size(), contents.fileCount);
+        }
+        Totals totals = diskUsage.measure(resource, output);
+        output.printf("Total size:  %s (%,d bytes) in %,d files and %,d directories%n", formatBytes(totals.bytes), totals.bytes, totals.files, totals.directories);
+        output.println("Newest:      " + formatTime(totals.newestModified));
+    }
+
+    // -- MEASURING METHODS ------------------
+
+    // Adds up the whole tree under the directory; prints progress every second if it takes that long.
+    public Totals measure(Path directory, PrintStream progressOutput) throws InterruptedException {
+
+        long startTime = System.nanoTime();
+        ForkJoinTask<Totals> rootTask = SIZE_POOL.submit(new SizeTask(directory, 0));
+
+        while (true) {
+            try {
+                return rootTask.get(PROGRESS_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                double seconds = (System.nanoTime() - startTime) / 1e9;
+                progressOutput.printf("Measuring... %,d files so far (%,.0f files/sec)%n", scannedFiles.sum(), scannedFiles.sum() / seconds);
+                progressOutput.flush();
+            } catch (InterruptedException e) {
+
+                // Stop every task at its next directory, then let the caller know.
+                cancelled = true;
+                rootTask.quietlyJoin();
+                throw e;
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+    }
+
+    // Returns what the directory directly contains: from the cache if its modification time did not change; null if unreadable.
+    private DirectoryContents contentsOf(Path directory) {
+        try {
+            long modifiedTime = Files.getLastModifiedTime(directory, LinkOption.NOFOLLOW_LINKS).toMillis();
+            DirectoryContents cachedContents = CONTENTS_CACHE.get(directory);
+            if (cachedContents != null && cachedContents.modifiedTime == modifiedTime) {
+                reusedDirectories.increment();
+                return cachedContents;
+            }
+
+            // Symbolic links are counted as (small) files and never followed.
+            DirectoryContents contents = new DirectoryContents(modifiedTime);
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+                for (Path entry : entries) {
+                    BasicFileAttributes attributes = Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                    if (attributes.isDirectory()) {
+                        contents.subdirectories.add(entry.getFileName().toString());
+                    } else {
+                        contents.fileBytes += attributes.size();
+                        contents.fileCount++;
+                        contents.newestModified = Math.max(contents.newestModified, attributes.lastModifiedTime().toMillis());
+                        scannedFiles.increment();
+                    }
+                }
+            }
+
+            if (CONTENTS_CACHE.size() >= MAX_CACHED_DIRECTORIES) {
+                CONTENTS_CACHE.clear();
+            }
+            CONTENTS_CACHE.put(directory, contents);
+            listedDirectories.increment();
+            return contents;
+        } catch (IOException | DirectoryIteratorException e) {
+
+            // Unreadable directories (ex. no permission) count as empty.
+            return null;
+        }
+    }
+
+    // Adds up a (very deep) subtree without recursion, using an explicit stack of directories.
+    private Totals measureIteratively(Path subtreeRoot) {
+        Totals totals = new Totals();
+        Deque<Path> pendingDirectories = new ArrayDeque<>();
+        pendingDirectories.push(subtreeRoot);
+
+        while (!pendingDirectories.isEmpty() && !cancelled) {
+            Path directory = pendingDirectories.pop();
+            DirectoryContents contents = contentsOf(directory);
+            if (contents == null) {
+                continue;
+            }
+            totals.addContents(contents);
+            for (String subdirectoryName : contents.subdirectories) {
+                pendingDirectories.push(directory.resolve(subdirectoryName));
+                totals.directories++;
+            }
+        }
+        return totals;
+    }
+
+    // -- CACHE METHODS ----------------------
+
+    // Forgets every cached directory (called after each command that changes resources).
+    static void invalidateAll() {
+        CONTENTS_CACHE.clear();
+    }
+
+    // -- HELPER METHODS ---------------------
+
+    // Formats a byte count with a decimal unit (ex. 12.3 MB).
+    static String formatBytes(long bytes) {
+        if (bytes < 1000) {
+            return bytes + " B";
+        }
+        String units = "kMGTPE";
+        int unitIndex = (int) (Math.log10(bytes) / 3);
+        return String.format("%.1f %sB", bytes / Math.pow(1000, unitIndex), units.charAt(unitIndex - 1));
+    }
+
+    private static String formatTime(long epochMillis) {
+        return formatTime(FileTime.fromMillis(epochMillis));
+    }
+
+    private static String formatTime(FileTime time) {
+        return LocalDateTime.ofInstant(time.toInstant(), ZoneId.systemDefault()).format(Terminal.LISTING_DATE_FORMAT);
+    }
+
+    private static String contentTypeOf(Path file) {
+        try {
+            String contentType = Files.probeContentType(file);
+            return (contentType == null) ? "" : " (" + contentType + ")";
+        } catch (IOException e) {
+            return "";
+        }
+    }
+
+    // -- NESTED CLASSES ---------------------
+
+    // Adds up one directory: its own files, plus a forked task per subdirectory whose totals are joined in (a tree reduction).
+    private class SizeTask extends RecursiveTask<Totals> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Path directory;
+        private final int depth;
+
+        SizeTask(Path directory, int depth) {
+            this.directory = directory;
+            this.depth = depth;
+        }
+
+        @Override
+        protected Totals compute() {
+            Totals totals = new Totals();
+            DirectoryContents contents = cancelled ? null : contentsOf(directory);
+            if (contents == null) {
+                return totals;
+            }
+            totals.addContents(contents);
+
+            List<SizeTask> subdirectoryTasks = new ArrayList<>();
+            for (String subdirectoryName : contents.subdirectories) {
+                Path subdirectory = directory.resolve(subdirectoryName);
+                if (depth < MAX_FORK_DEPTH) {
+                    SizeTask subdirectoryTask = new SizeTask(subdirectory, depth + 1);
+                    subdirectoryTask.fork();
+                    subdirectoryTasks.add(subdirectoryTask);
+                } else {
+                    totals.addSubdirectory(measureIteratively(subdirectory));
+                }
+            }
+
+            // The top directory also keeps each subdirectory's totals (for '--top').
+            for (int taskIndex = 0; taskIndex < subdirectoryTasks.size(); taskIndex++) {
+                Totals subdirectoryTotals = subdirectoryTasks.get(taskIndex).join();
+                totals.addSubdirectory(subdirectoryTotals);
+                if (depth == 0) {
+                    totals.subdirectories.put(contents.subdirectories.get(taskIndex), subdirectoryTotals);
+                }
+            }
+            return totals;
+        }
+    }
+
+    // What one directory directly contains (not counting its subdirectories' contents).
+    private static class DirectoryContents {
+        final long modifiedTime;
+        final List<String> subdirectories = new ArrayList<>();
+        long fileBytes, fileCount, newestModified;
+
+        DirectoryContents(long modifiedTime) {
+            this.modifiedTime = modifiedTime;
+            this.newestModified = modifiedTime;
+        }
+    }
+
+    // The totals of a whole tree: bytes and files inside it, directories below it, and its newest modification time.
+    public static class Totals {
+        long bytes, files, directories, newestModified;
+        final Map<String, Totals> subdirectories = new LinkedHashMap<>();
+
+        private void addContents(DirectoryContents contents) {
+            bytes += contents.fileBytes;
+            files += contents.fileCount;
+            newestModified = Math.max(newestModified, contents.newestModified);
+        }
+
+        private void addSubdirectory(Totals subdirectoryTotals) {
+            bytes += subdirectoryTotals.bytes;
+            files += subdirectoryTotals.files;
+            directories += 1 + subdirectoryTotals.directories;
+            newestModified = Math.max(newestModified, subdirectoryTotals.newestModified);
+        }
+    }
+
+}
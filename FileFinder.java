@@ -0,0 +1,195 @@
+// == IMPORTS =======================
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.concurrent.CountedCompleter;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.PatternSyntaxException;
+
+// == CLASS =======================
+// FILE FINDER | Searches a directory tree in parallel (work-stealing) and prints matching names as soon as they are found.
+public class FileFinder {
+
+    // -- CONSTANT / UTILITY VARIABLES ------
+
+    // Directory listing is mostly waiting on the disk, so use more threads than cores.
+    static final ForkJoinPool SEARCH_POOL = new ForkJoinPool(Math.max(4, Runtime.getRuntime().availableProcessors() * 2));
+
+    static final int UNLIMITED_DEPTH = Integer.MAX_VALUE;
+
+    // -- OBJECT FIELDS ---------------------
+
+    private final Path searchRoot;
+    private final PathMatcher nameMatcher;
+    private final int maxDepth, resourceType;
+    private final PrintStream output;
+    private final LongAdder matchCount = new LongAdder();
+    private volatile boolean cancelled;
+    private volatile RuntimeException outputFailure;
+
+    // -- CONSTRUCTOR -------------------------
+
+    // resourceType is Terminal.FILE, Terminal.DIRECTORY or -1 (both).
+    public FileFinder(Path searchRoot, PathMatcher nameMatcher, int maxDepth, int resourceType, PrintStream output) {
+        this.searchRoot = searchRoot;
+        this.nameMatcher = nameMatcher;
+        this.maxDepth = maxDepth;
+        this.resourceType = resourceType;
+        this.output = output;
+    }
+
+    // -- COMMAND REGISTRATION ---------------
+
+    static void registerCommands(CommandRegistry registry) {
+        registry.register(Command.of("find", 1, false, false,
+                "[ find (pattern + none, directory_name + --regex, --depth N, --type file/directory) | Finds every resource whose name matches the glob (ex. '*.txt'). ]",
+                FileFinder::findCommand));
+    }
+
+    private static void findCommand(Terminal terminal, String[] tokenizedCommand) throws InterruptedException {
+
+        // Sort the arguments into the pattern, the directory and the options.
+        String pattern = null, directoryName = null;
+        boolean isRegex = false;
+        int maxDepth = UNLIMITED_DEPTH, resourceType = -1;
+
+        for (int tokenIndex = 1; tokenIndex < tokenizedCommand.length; tokenIndex++) {
+            String token = tokenizedCommand[tokenIndex];
+            if (token.equalsIgnoreCase("--regex")) {
+                isRegex = true;
+            } else if (token.equalsIgnoreCase("--depth")) {
+                try {
+                    maxDepth = Integer.parseInt(tokenizedCommand[++tokenIndex]);
+                } catch (NumberFormatException e) {
+                    throw new IndexOutOfBoundsException();
+                }
+                if (maxDepth < 1) {
+                    throw new IndexOutOfBoundsException();
+                }
+            } else if (token.equalsIgnoreCase("--type")) {
+                resourceType = Terminal.parseResourceType(tokenizedCommand[++tokenIndex]);
+                if (resourceType == -1) {
+                    terminal.printError("Invalid parameter: --type must be \"file\" or \"directory\".");
+                    return;
+                }
+            } else if (pattern == null) {
+                pattern = token;
+            } else {
+                directoryName = token;
+            }
+        }
+
+        if (pattern == null) {
+            throw new IndexOutOfBoundsException();
+        }
+
+        // Search from the working directory, or from the given directory inside it.
+        File searchDirectory = (directoryName == null) ? terminal.getWorkingDirectory() : new File(terminal.getWorkingDirectory(), directoryName);
+        if (!searchDirectory.isDirectory()) {
+            terminal.printError("No such directory exists.");
+            return;
+        }
+
+        PathMatcher nameMatcher;
+        try {
+            nameMatcher = FileSystems.getDefault().getPathMatcher((isRegex ? "regex:" : "glob:") + pattern);
+        } catch (PatternSyntaxException e) {
+            terminal.printError("Invalid pattern: " + e.getDescription() + ".");
+            return;
+        }
+
+        new FileFinder(searchDirectory.toPath(), nameMatcher, maxDepth, resourceType, terminal.getOutput()).search();
+    }
+
+    // -- SEARCH METHODS ---------------------
+
+    // Searches the whole tree, printing matches as they are found; returns the amount of matches.
+    public long search() throws InterruptedException {
+        SearchTask rootTask = new SearchTask(null, searchRoot, 0);
+        SEARCH_POOL.execute(rootTask);
+
+        try {
+            rootTask.get();
+        } catch (InterruptedException e) {
+            cancelled = true;
+            rootTask.quietlyJoin();
+            throw e;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+
+        // The output failed (ex. the next pipeline stage stopped reading); let the caller know.
+        if (outputFailure != null) {
+            throw outputFailure;
+        }
+        output.flush();
+        return matchCount.sum();
+    }
+
+    // Prints the match relative to the search root.
+    private void printMatch(Path match) {
+        try {
+            output.println(searchRoot.relativize(match));
+            matchCount.increment();
+        } catch (RuntimeException e) {
+            outputFailure = e;
+            cancelled = true;
+        }
+    }
+
+    // -- NESTED CLASSES ---------------------
+
+    // Lists one directory and forks a task per subdirectory; it never waits on them, so deep trees cannot overflow the stack.
+    private class SearchTask extends CountedCompleter<Void> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Path directory;
+        private final int depth;
+
+        SearchTask(SearchTask parent, Path directory, int depth) {
+            super(parent);
+            this.directory = directory;
+            this.depth = depth;
+        }
+
+        @Override
+        public void compute() {
+            if (!cancelled) {
+                try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+                    for (Path entry : entries) {
+                        if (cancelled) {
+                            break;
+                        }
+
+                        // Symbolic links are never followed (no cycles).
+                        boolean isDirectory = Files.isDirectory(entry, LinkOption.NOFOLLOW_LINKS);
+
+                        if ((resourceType == -1 || (resourceType == Terminal.DIRECTORY) == isDirectory) && nameMatcher.matches(entry.getFileName())) {
+                            printMatch(entry);
+                        }
+
+                        if (isDirectory && depth + 1 < maxDepth) {
+                            addToPendingCount(1);
+                            new SearchTask(this, entry, depth + 1).fork();
+                        }
+                    }
+                } catch (IOException | DirectoryIteratorException e) {
+                    // Unreadable directories (ex. no permission) are skipped, like 'lookhere' would.
+                }
+            }
+            tryComplete();
+        }
+    }
+
+}
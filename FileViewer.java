@@ -0,0 +1,441 @@
+// == IMPORTS =======================
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+// == CLASS =======================
+// FILE VIEWER | Prints text files (whole, line ranges, head, tail, page by page) straight from a file channel, using a line-offset index.
+public class FileViewer {
+
+    // -- CONSTANT / UTILITY VARIABLES ------
+
+    // The index remembers where every this-many-th line starts; reaching any line scans at most this many lines.
+    static final int LINE_INDEX_STRIDE = 1024;
+
+    // The line indexes of this many files are kept (least recently used ones are dropped).
+    static final int MAX_CACHED_INDEXES = 16;
+
+    static final int SCAN_BUFFER_BYTES = 1 << 20, COPY_BUFFER_BYTES = 1 << 16;
+
+    // An index is only extended if this many bytes at the start and at the end of what it covers are unchanged.
+    static final int FINGERPRINT_BYTES = 4096;
+    static final int DEFAULT_LINE_COUNT = 10, PAGE_LINES = 24;
+
+    // While following a file, it is checked at least this often, even without a change notification (ex. network drives).
+    static final long FOLLOW_CHECK_INTERVAL_MILLIS = 500;
+
+    private static final Map<Path, LineIndex> LINE_INDEXES = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Path, LineIndex> eldest) {
+            return size() > MAX_CACHED_INDEXES;
+        }
+    };
+
+    // -- COMMAND REGISTRATION ---------------
+
+    static void registerCommands(CommandRegistry registry) {
+        registry.register(Command.of("head", 1, false, false,
+                "[ head (file_name + none, line_count) | Prints the first lines of a text file (10 by default). ]",
+                (terminal, tokenizedCommand) -> printHead(terminal, resolve(terminal, tokenizedCommand[1]), lineCountArgument(tokenizedCommand))));
+
+        registry.register(Command.of("tail", 1, false, false,
+                "[ tail (file_name + none, line_count) | Prints the last lines of a text file (10 by default). ]",
+                (terminal, tokenizedCommand) -> printTail(terminal, resolve(terminal, tokenizedCommand[1]), lineCountArgument(tokenizedCommand))));
+
+        registry.register(Command.of("more", 1, false, false,
+                "[ more (file_name) | Shows a text file one page at a time; Enter shows the next page, a number jumps to that line, q quits. ]",
+                (terminal, tokenizedCommand) -> page(terminal, resolve(terminal, tokenizedCommand[1]))));
+    }
+
+    // -- VIEWER METHODS ---------------------
+
+    // Prints lines firstLine to lastLine (counting from 1, both included; Long.MAX_VALUE means to the end).
+    static void printLines(Terminal terminal, Path file, long firstLine, long lastLine) throws IOException {
+        try (FileChannel channel = openTextFile(file)) {
+            long size = channel.size();
+
+            // The whole file needs no line index.
+            long start = 0, end = size;
+            if (firstLine > 1 || lastLine != Long.MAX_VALUE) {
+                LineIndex lineIndex = lineIndexOf(file, channel);
+                start = lineIndex.lineStart(channel, firstLine - 1);
+                end = (lastLine == Long.MAX_VALUE) ? size : lineIndex.lineStart(channel, lastLine);
+            }
+            copyRange(channel, start, end, terminal.getOutput());
+        }
+    }
+
+    // Prints the first lines of the file; reads only as far as they go.
+    private static void printHead(Terminal terminal, Path file, long lineCount) throws IOException {
+        try (FileChannel channel = openTextFile(file)) {
+            copyRange(channel, 0, skipLines(channel, 0, lineCount), terminal.getOutput());
+        }
+    }
+
+    // Prints the last lines of the file, found by reading backwards from its end.
+    private static void printTail(Terminal terminal, Path file, long lineCount) throws IOException {
+        try (FileChannel channel = openTextFile(file)) {
+            long size = channel.size();
+            copyRange(channel, tailStart(channel, size, lineCount), size, terminal.getOutput());
+        }
+    }
+
+    // Shows the file a page at a time (everything at once if the session is not interactive, ex. in a script).
+    private static void page(Terminal terminal, Path file) throws IOException {
+        PrintStream output = terminal.getOutput();
+
+        try (FileChannel channel = openTextFile(file)) {
+            LineIndex lineIndex = lineIndexOf(file, channel);
+            long line = 0;
+
+            while (line < lineIndex.lineCount) {
+                long pageEnd = Math.min(line + PAGE_LINES, lineIndex.lineCount);
+                copyRange(channel, lineIndex.lineStart(channel, line), lineIndex.lineStart(channel, pageEnd), output);
+                line = pageEnd;
+
+                if (line >= lineIndex.lineCount || !terminal.isInteractive()) {
+                    continue;
+                }
+
+                output.printf("-- more -- (%,d of %,d lines, %d%%) [Enter: next page, number: go to line, q: quit] ",
+                        line, lineIndex.lineCount, line * 100 / lineIndex.lineCount);
+                output.flush();
+                String answer = terminal.readInputLine();
+                if (answer == null || answer.trim().equalsIgnoreCase("q")) {
+                    break;
+                }
+                if (!answer.isBlank()) {
+                    try {
+                        line = Math.max(0, Long.parseLong(answer.trim()) - 1);
+                    } catch (NumberFormatException e) {
+                        // Anything else just shows the next page.
+                    }
+                }
+            }
+        }
+    }
+
+    // Prints whatever is appended to the file from now on, until stopped (Enter in an interactive session, 'kill' for a job).
+    static void follow(Terminal terminal, Path file) throws IOException {
+        PrintStream output = terminal.getOutput();
+        FileChannel channel = openTextFile(file);
+        Object fileKey = fileKeyOf(file);
+        long position = channel.size();
+        WatchService watcher = startWatching(file);
+
+        try {
+            while (!(terminal.hasTypedInput() && terminal.readInputLine() != null)) {
+                waitForChange(watcher);
+
+                // Rotated (another file now has the name): finish the old file, then follow the new one from its start.
+                Object currentFileKey = fileKeyOf(file);
+                if (currentFileKey != null && !currentFileKey.equals(fileKey)) {
+                    copyBytes(channel, position, channel.size(), output);
+                    channel.close();
+                    channel = openTextFile(file);
+                    fileKey = currentFileKey;
+                    position = 0;
+                    output.println("--- " + file.getFileName() + " was replaced; following the new file ---");
+                }
+
+                // Truncated: print its new content from the start.
+                long size = channel.size();
+                if (size < position) {
+                    output.println("--- " + file.getFileName() + " was truncated ---");
+                    position = 0;
+                }
+
+                // Appended: print only the new bytes.
+                if (size > position) {
+                    copyBytes(channel, position, size, output);
+                    position = size;
+                    output.flush();
+                }
+            }
+        } catch (InterruptedException e) {
+
+            // Following only ends by being stopped, so this is not a failure.
+            Thread.currentThread().interrupt();
+        } finally {
+            channel.close();
+            if (watcher != null) {
+                watcher.close();
+            }
+        }
+    }
+
+    // Watches the file's directory for changes; returns null if the filesystem cannot notify (then the file is polled).
+    private static WatchService startWatching(Path file) {
+        try {
+            WatchService watcher = file.getFileSystem().newWatchService();
+            file.toAbsolutePath().getParent().register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+            return watcher;
+        } catch (IOException | UnsupportedOperationException e) {
+            return null;
+        }
+    }
+
+    // Sleeps until something in the file's directory changes, or at most the check interval.
+    private static void waitForChange(WatchService watcher) throws InterruptedException {
+        if (watcher == null) {
+            Thread.sleep(FOLLOW_CHECK_INTERVAL_MILLIS);
+            return;
+        }
+
+        WatchKey watchKey = watcher.poll(FOLLOW_CHECK_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        while (watchKey != null) {
+            watchKey.pollEvents();
+            watchKey.reset();
+            watchKey = watcher.poll();
+        }
+    }
+
+    // Returns what identifies the file itself (ex. its inode), so a rotated file can be noticed; null if it is missing.
+    private static Object fileKeyOf(Path file) {
+        try {
+            return Files.readAttributes(file, BasicFileAttributes.class).fileKey();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    // -- HELPER METHODS ---------------------
+
+    // Parses "A-B" (lines A to B), "A-" (line A to the end) or "A" (only line A); returns null if it is not a valid range.
+    static long[] parseLineRange(String range) {
+        try {
+            int dashIndex = range.indexOf('-');
+            long firstLine = Long.parseLong(dashIndex < 0 ? range : range.substring(0, dashIndex));
+            long lastLine = (dashIndex < 0) ? firstLine : (dashIndex == range.length() - 1) ? Long.MAX_VALUE : Long.parseLong(range.substring(dashIndex + 1));
+            return (firstLine < 1 || lastLine < firstLine) ? null : new long[]{firstLine, lastLine};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static Path resolve(Terminal terminal, String fileName) {
+        return terminal.getWorkingDirectory().toPath().resolve(fileName);
+    }
+
+    private static long lineCountArgument(String[] tokenizedCommand) {
+        long lineCount = (tokenizedCommand.length > 2) ? Long.parseLong(tokenizedCommand[2]) : DEFAULT_LINE_COUNT;
+        if (lineCount < 0) {
+            throw new IndexOutOfBoundsException();
+        }
+        return lineCount;
+    }
+
+    private static FileChannel openTextFile(Path file) throws IOException {
+        if (!Files.isRegularFile(file)) {
+            throw new FileNotFoundException(file.toString());
+        }
+        return FileChannel.open(file, StandardOpenOption.READ);
+    }
+
+    // Writes the bytes between start and end to the output, and ends the output's line if the last line had no line break.
+    private static void copyRange(FileChannel channel, long start, long end, PrintStream output) throws IOException {
+        if (copyBytes(channel, start, end, output) != '\n') {
+            output.println();
+        }
+        output.flush();
+    }
+
+    // Writes the bytes between start and end to the output in large blocks (no decoding, no per-line printing); returns the last byte.
+    private static byte copyBytes(FileChannel channel, long start, long end, PrintStream output) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(COPY_BUFFER_BYTES);
+        byte lastByte = '\n';
+
+        for (long position = start; position < end; ) {
+            buffer.clear().limit((int) Math.min(COPY_BUFFER_BYTES, end - position));
+            int read = channel.read(buffer, position);
+            if (read <= 0) {
+                break;
+            }
+            output.write(buffer.array(), 0, read);
+            lastByte = buffer.get(read - 1);
+            position += read;
+            CommandMetrics.addBytesRead(read);
+        }
+        return lastByte;
+    }
+
+    // Returns the position just after the given amount of line breaks from the start position (the size if there are fewer).
+    private static long skipLines(FileChannel channel, long start, long lineCount) throws IOException {
+        if (lineCount <= 0) {
+            return start;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER_BYTES);
+        long position = start, skipped = 0;
+        while (true) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read <= 0) {
+                return position;
+            }
+            byte[] bytes = buffer.array();
+            for (int byteIndex = 0; byteIndex < read; byteIndex++) {
+                if (bytes[byteIndex] == '\n' && ++skipped == lineCount) {
+                    return position + byteIndex + 1;
+                }
+            }
+            position += read;
+        }
+    }
+
+    // Returns where the last lines of the file start, reading blocks backwards from the end.
+    private static long tailStart(FileChannel channel, long size, long lineCount) throws IOException {
+        if (lineCount <= 0) {
+            return size;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER_BYTES);
+        long blockEnd = size, found = 0;
+        boolean atLastByte = true;
+
+        while (blockEnd > 0) {
+            long blockStart = Math.max(0, blockEnd - SCAN_BUFFER_BYTES);
+            buffer.clear().limit((int) (blockEnd - blockStart));
+            channel.read(buffer, blockStart);
+            byte[] bytes = buffer.array();
+
+            for (int byteIndex = (int) (blockEnd - blockStart) - 1; byteIndex >= 0; byteIndex--) {
+
+                // The line break ending the last line does not start another line.
+                if (atLastByte) {
+                    atLastByte = false;
+                    if (bytes[byteIndex] == '\n') {
+                        continue;
+                    }
+                }
+                if (bytes[byteIndex] == '\n' && ++found == lineCount) {
+                    return blockStart + byteIndex + 1;
+                }
+            }
+            blockEnd = blockStart;
+        }
+        return 0;
+    }
+
+    // Returns the file's line index, reusing (or, if the file was only appended to, extending) the cached one. A file that
+    // grew but whose indexed bytes changed (rewritten in place) is indexed again from the start.
+    private static LineIndex lineIndexOf(Path file, FileChannel channel) throws IOException {
+        Path key = file.toAbsolutePath().normalize();
+        long size = channel.size(), modifiedTime = Files.getLastModifiedTime(file).toMillis();
+
+        LineIndex cachedIndex;
+        synchronized (LINE_INDEXES) {
+            cachedIndex = LINE_INDEXES.get(key);
+        }
+        if (cachedIndex != null && cachedIndex.size == size && cachedIndex.modifiedTime == modifiedTime) {
+            return cachedIndex;
+        }
+
+        boolean appended = cachedIndex != null && cachedIndex.size < size && cachedIndex.fingerprint == LineIndex.fingerprint(channel, cachedIndex.size);
+        LineIndex lineIndex = appended
+                ? cachedIndex.extend(channel, size, modifiedTime)
+                : new LineIndex(0, 0).extend(channel, size, modifiedTime);
+        synchronized (LINE_INDEXES) {
+            LINE_INDEXES.put(key, lineIndex);
+        }
+        return lineIndex;
+    }
+
+    // -- NESTED CLASSES ---------------------
+
+    // Where every LINE_INDEX_STRIDE-th line of a file starts, and how many lines the file has.
+    private static class LineIndex {
+
+        final long size, modifiedTime;
+        long fingerprint;
+        long[] checkpoints = {0};
+        int checkpointCount = 1;
+        long lineCount;
+
+        LineIndex(long size, long modifiedTime) {
+            this.size = size;
+            this.modifiedTime = modifiedTime;
+        }
+
+        // Returns a new index for the (grown) file, scanning only from this index's last checkpoint.
+        LineIndex extend(FileChannel channel, long newSize, long newModifiedTime) throws IOException {
+            LineIndex extended = new LineIndex(newSize, newModifiedTime);
+            extended.checkpoints = Arrays.copyOf(checkpoints, Math.max(16, checkpointCount * 2));
+            extended.checkpointCount = checkpointCount;
+
+            long position = checkpoints[checkpointCount - 1];
+            long lineNumber = (long) (checkpointCount - 1) * LINE_INDEX_STRIDE;
+            byte lastByte = '\n';
+            ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER_BYTES);
+
+            while (position < newSize) {
+                buffer.clear();
+                int read = channel.read(buffer, position);
+                if (read <= 0) {
+                    break;
+                }
+                byte[] bytes = buffer.array();
+                for (int byteIndex = 0; byteIndex < read; byteIndex++) {
+                    if (bytes[byteIndex] == '\n' && ++lineNumber % LINE_INDEX_STRIDE == 0) {
+                        extended.addCheckpoint(position + byteIndex + 1);
+                    }
+                }
+                lastByte = bytes[read - 1];
+                position += read;
+            }
+
+            // A last line without a line break still counts.
+            extended.lineCount = lineNumber + ((position > 0 && lastByte != '\n') ? 1 : 0);
+            extended.fingerprint = fingerprint(channel, newSize);
+            return extended;
+        }
+
+        // Returns a checksum of the first and the last FINGERPRINT_BYTES of the file's first size bytes.
+        static long fingerprint(FileChannel channel, long size) throws IOException {
+            CRC32 checksum = new CRC32();
+            ByteBuffer buffer = ByteBuffer.allocate(FINGERPRINT_BYTES);
+            for (long regionStart : new long[]{0, Math.max(FINGERPRINT_BYTES, size - FINGERPRINT_BYTES)}) {
+                buffer.clear().limit((int) Math.max(0, Math.min(FINGERPRINT_BYTES, size - regionStart)));
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer, regionStart + buffer.position()) <= 0) {
+                        break;
+                    }
+                }
+                checksum.update(buffer.flip());
+            }
+            return checksum.getValue();
+        }
+
+        // Returns where the line (counting from 0) starts; the size of the file if it has fewer lines.
+        long lineStart(FileChannel channel, long line) throws IOException {
+            if (line >= lineCount) {
+                return size;
+            }
+            int checkpointIndex = (int) (line / LINE_INDEX_STRIDE);
+            return skipLines(channel, checkpoints[checkpointIndex], line - (long) checkpointIndex * LINE_INDEX_STRIDE);
+        }
+
+        private void addCheckpoint(long position) {
+            if (checkpointCount == checkpoints.length) {
+                checkpoints = Arrays.copyOf(checkpoints, checkpointCount * 2);
+            }
+            checkpoints[checkpointCount++] = position;
+        }
+    }
+
+}
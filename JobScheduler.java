@@ -0,0 +1,282 @@
+// == IMPORTS =======================
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+// == CLASS =======================
+// JOB SCHEDULER | Runs 'command &' in the background of a session; each job gets its own copy of the session and output buffer.
+public class JobScheduler {
+
+    // -- CONSTANT / UTILITY VARIABLES ------
+
+    // A job keeps at most this much of its output in memory; the rest (and all of it, once the job was reported as
+    // finished) waits in a temporary file until 'fg'.
+    static final int MAX_BUFFERED_OUTPUT_BYTES = 1 << 20;
+
+    // -- OBJECT FIELDS ---------------------
+
+    private final Map<Integer, Job> jobs = new TreeMap<>();
+    private int nextJobNumber = 1;
+
+    // -- COMMAND REGISTRATION ---------------
+
+    static void registerCommands(CommandRegistry registry) {
+        registry.register(Command.of("jobs", 0, false, false,
+                "[ jobs (none) | Lists the background jobs (start one by ending a command with '&'). ]",
+                (terminal, tokenizedCommand) -> terminal.getJobs().listJobs(terminal)));
+
+        registry.register(Command.of("fg", 1, false, false,
+                "[ fg (job_number) | Waits for a background job, then prints its output. ]",
+                (terminal, tokenizedCommand) -> terminal.getJobs().foregroundJob(terminal, tokenizedCommand[1])));
+
+        registry.register(Command.of("wait", 0, false, false,
+                "[ wait (none, job_number) | Waits until every background job (or the given one) has finished. ]",
+                (terminal, tokenizedCommand) -> terminal.getJobs().waitForJobs(terminal, tokenizedCommand.length > 1 ? tokenizedCommand[1] : null)));
+
+        registry.register(Command.of("kill", 1, false, false,
+                "[ kill (job_number) | Stops a background job. ]",
+                (terminal, tokenizedCommand) -> terminal.getJobs().killJob(terminal, tokenizedCommand[1])));
+    }
+
+    // -- SCHEDULER METHODS ------------------
+
+    // Starts the command line on its own thread; returns the job number.
+    int launch(Terminal session, String[][] stages, String commandLine) {
+
+        // The job works on a snapshot of the session (working directory, safety), so it cannot race with it.
+        JobOutput outputBuffer = new JobOutput();
+        PrintStream jobOutput = new PrintStream(outputBuffer, true, StandardCharsets.UTF_8);
+        Terminal jobTerminal = session.forkJob(jobOutput);
+
+        Job job;
+        synchronized (this) {
+            job = new Job(nextJobNumber++, commandLine, outputBuffer);
+            jobs.put(job.number, job);
+        }
+
+        job.thread = new Thread(() -> {
+            try {
+                jobTerminal.runStages(stages);
+                job.failed = jobTerminal.hasCommandFailed();
+            } finally {
+                jobOutput.flush();
+                job.endTime = System.nanoTime();
+            }
+        }, "job-" + job.number);
+        job.thread.setDaemon(true);
+        job.thread.start();
+
+        return job.number;
+    }
+
+    // Prints a one-line notice for every job that finished since the last notice; the output of those jobs leaves the
+    // memory for a temporary file, since it may never be asked for.
+    synchronized void reportFinishedJobs(PrintStream output) {
+        for (Job job : jobs.values()) {
+            if (!job.thread.isAlive() && !job.reported) {
+                job.reported = true;
+                output.println(job.describe() + " (use 'fg " + job.number + "' to see its output)");
+                try {
+                    job.outputBuffer.spill();
+                } catch (IOException e) {
+                    // It stays in memory instead.
+                }
+            }
+        }
+    }
+
+    // Prints every job and its status.
+    private void listJobs(Terminal terminal) {
+        List<Job> jobsToList;
+        synchronized (this) {
+            jobsToList = new ArrayList<>(jobs.values());
+        }
+
+        if (jobsToList.isEmpty()) {
+            terminal.getOutput().println("There are no background jobs.");
+        }
+        for (Job job : jobsToList) {
+            terminal.getOutput().println(job.describe());
+        }
+    }
+
+    // Waits for the job to finish, prints everything it printed, then forgets about it.
+    private void foregroundJob(Terminal terminal, String jobNumber) throws InterruptedException {
+        Job job = findJob(terminal, jobNumber);
+        if (job == null) {
+            return;
+        }
+
+        job.thread.join();
+        synchronized (this) {
+            jobs.remove(job.number);
+        }
+
+        try {
+            job.outputBuffer.transferTo(terminal.getOutput());
+        } catch (IOException e) {
+            terminal.printError("The output of job " + job.number + " could not be read back: " + e.getMessage());
+        }
+        if (job.failed) {
+            terminal.printError("Job " + job.number + " failed.");
+        }
+    }
+
+    // Waits for one job, or for all of them.
+    private void waitForJobs(Terminal terminal, String jobNumber) throws InterruptedException {
+        List<Job> jobsToWaitFor = new ArrayList<>();
+        if (jobNumber != null) {
+            Job job = findJob(terminal, jobNumber);
+            if (job == null) {
+                return;
+            }
+            jobsToWaitFor.add(job);
+        } else {
+            synchronized (this) {
+                jobsToWaitFor.addAll(jobs.values());
+            }
+        }
+
+        for (Job job : jobsToWaitFor) {
+            job.thread.join();
+        }
+        reportFinishedJobs(terminal.getOutput());
+    }
+
+    // Interrupts the job; interruptible work (sleeping, deleting, piping) stops at its next check.
+    private void killJob(Terminal terminal, String jobNumber) {
+        Job job = findJob(terminal, jobNumber);
+        if (job == null) {
+            return;
+        }
+
+        if (!job.thread.isAlive()) {
+            terminal.getOutput().println("Job " + job.number + " has already finished.");
+            return;
+        }
+        job.killed = true;
+        job.thread.interrupt();
+        terminal.getOutput().println("Stopping job " + job.number + ".");
+    }
+
+    // Returns the job with the given number (or null, after printing an error).
+    private synchronized Job findJob(Terminal terminal, String jobNumber) {
+        Job job = null;
+        try {
+            job = jobs.get(Integer.parseInt(jobNumber.startsWith("%") ? jobNumber.substring(1) : jobNumber));
+        } catch (NumberFormatException e) {
+            // Not a number; reported below.
+        }
+
+        if (job == null) {
+            terminal.printError("No such job: " + jobNumber + ". Use 'jobs' to see the background jobs.");
+        }
+        return job;
+    }
+
+    // -- NESTED CLASSES ---------------------
+
+    // One background job.
+    private static class Job {
+
+        final int number;
+        final String commandLine;
+        final JobOutput outputBuffer;
+        final long startTime = System.nanoTime();
+        Thread thread;
+        volatile long endTime;
+        volatile boolean failed, killed;
+        boolean reported;
+
+        Job(int number, String commandLine, JobOutput outputBuffer) {
+            this.number = number;
+            this.commandLine = commandLine;
+            this.outputBuffer = outputBuffer;
+        }
+
+        // Ex. "[2] Done     (1.52s)  delete directory build &".
+        String describe() {
+            String status;
+            if (thread.isAlive()) {
+                status = killed ? "Stopping" : "Running";
+            } else if (killed) {
+                status = "Killed";
+            } else {
+                status = failed ? "Failed" : "Done";
+            }
+
+            long elapsedTime = (thread.isAlive() ? System.nanoTime() : endTime) - startTime;
+            return String.format("[%d] %-9s (%.2fs)  %s", number, status, elapsedTime / 1e9, commandLine);
+        }
+    }
+
+    // Everything a job prints: in memory up to MAX_BUFFERED_OUTPUT_BYTES, after that (or once spilled) in a temporary file.
+    private static class JobOutput extends OutputStream {
+
+        private ByteArrayOutputStream memoryBuffer = new ByteArrayOutputStream();
+        private Path spillFile;
+        private OutputStream spillStream;
+
+        @Override
+        public synchronized void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public synchronized void write(byte[] bytes, int offset, int length) throws IOException {
+            if (spillStream == null && memoryBuffer.size() + length > MAX_BUFFERED_OUTPUT_BYTES) {
+                startSpilling();
+            }
+            if (spillStream != null) {
+                spillStream.write(bytes, offset, length);
+            } else {
+                memoryBuffer.write(bytes, offset, length);
+            }
+        }
+
+        @Override
+        public synchronized void flush() throws IOException {
+            if (spillStream != null) {
+                spillStream.flush();
+            }
+        }
+
+        // Moves what is in memory into a temporary file (deleted when read back, or at exit); nothing to do if empty.
+        synchronized void spill() throws IOException {
+            if (spillStream == null && memoryBuffer.size() > 0) {
+                startSpilling();
+            }
+        }
+
+        private void startSpilling() throws IOException {
+            spillFile = Files.createTempFile("pseudobash-job-", ".out");
+            spillFile.toFile().deleteOnExit();
+            spillStream = new BufferedOutputStream(Files.newOutputStream(spillFile));
+            memoryBuffer.writeTo(spillStream);
+            memoryBuffer = null;
+        }
+
+        // Copies everything the job printed into the stream, then frees it (memory and file).
+        synchronized void transferTo(PrintStream to) throws IOException {
+            if (spillStream == null) {
+                memoryBuffer.writeTo(to);
+                memoryBuffer = new ByteArrayOutputStream();
+                return;
+            }
+            spillStream.close();
+            Files.copy(spillFile, to);
+            Files.deleteIfExists(spillFile);
+        }
+    }
+
+}
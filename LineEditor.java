@@ -0,0 +1,427 @@
+// == IMPORTS =======================
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+// == CLASS =======================
+// LINE EDITOR | Reads the commands a person types, with Tab completion and the arrow keys walking the history.
+//
+// Java cannot switch the terminal out of line mode by itself, so 'stty' does it (only while a command is being typed;
+// the commands themselves run with the usual settings). Without a terminal that 'stty' can set, there is no line
+// editor and the session reads whole lines like before.
+public class LineEditor {
+
+    // -- CONSTANT / UTILITY VARIABLES ------
+
+    static final int MAX_LISTED_CANDIDATES = 200;
+    static final int LISTING_WIDTH = 100;
+
+    private static final File TTY = new File("/dev/tty");
+
+    // Characters the lexer treats specially, so they are escaped in completed words.
+    private static final String SPECIAL_CHARACTERS = " \t|&'\"\\$";
+
+    private static final int CTRL_A = 1, CTRL_D = 4, CTRL_E = 5, BACKSPACE = 8, TAB = 9, CTRL_U = 21, ESCAPE = 27, DELETE = 127;
+
+    // -- OBJECT FIELDS ---------------------
+
+    private final Terminal session;
+    private final BufferedReader input;
+    private final PrintStream output;
+    private final CommandHistory history;
+    private final String lineModeSettings;
+    private final PrefixTrie commandNames = new PrefixTrie();
+    private volatile boolean editing;
+
+    // -- CONSTRUCTOR -------------------------
+
+    private LineEditor(Terminal session, BufferedReader input, PrintStream output, CommandHistory history, String lineModeSettings) {
+        this.session = session;
+        this.input = input;
+        this.output = output;
+        this.history = history;
+        this.lineModeSettings = lineModeSettings;
+
+        // Secret commands stay secret: they are not completed.
+        for (Command command : Terminal.COMMANDS.listCommands()) {
+            commandNames.add(command.name());
+        }
+
+        // Never leave the terminal without echo (ex. the session is killed while a command is being typed).
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            if (editing) {
+                stty(lineModeSettings);
+            }
+        }));
+    }
+
+    // Returns a line editor for the session, or null if there is no terminal whose settings can be changed.
+    static LineEditor create(Terminal session, BufferedReader input, PrintStream output, CommandHistory history) {
+        if (System.console() == null || !TTY.exists()) {
+            return null;
+        }
+        String lineModeSettings = stty("-g");
+        if (lineModeSettings == null || lineModeSettings.isEmpty()) {
+            return null;
+        }
+        return new LineEditor(session, input, output, history, lineModeSettings);
+    }
+
+    // -- EDITING METHODS --------------------
+
+    // Prints the prompt and returns the line typed after it (null at the end of the input).
+    String readLine(String prompt) throws IOException {
+        if (stty("-icanon", "-echo", "min", "1") == null) {
+            output.print(prompt);
+            output.flush();
+            return input.readLine();
+        }
+
+        editing = true;
+        try {
+            return edit(prompt);
+        } finally {
+            editing = false;
+            stty(lineModeSettings);
+        }
+    }
+
+    // Reads key by key; the line is redrawn after every key.
+    private String edit(String prompt) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int cursor = 0;
+
+        // Walking the history starts past the newest command; the unfinished line is kept for walking back down.
+        long historyNumber = history.newestNumber() + 1;
+        String unfinishedLine = "";
+        boolean previousKeyWasTab = false;
+
+        output.print(prompt);
+        output.flush();
+
+        while (true) {
+            int key = input.read();
+            boolean keyIsTab = false;
+
+            switch (key) {
+                case -1:
+                    output.println();
+                    return line.length() == 0 ? null : line.toString();
+                case '\r':
+                case '\n':
+                    output.println();
+                    output.flush();
+                    return line.toString();
+                case CTRL_D:
+                    if (line.length() == 0) {
+                        output.println();
+                        return null;
+                    }
+                    if (cursor < line.length()) {
+                        line.deleteCharAt(cursor);
+                    }
+                    break;
+                case BACKSPACE:
+                case DELETE:
+                    if (cursor > 0) {
+                        line.deleteCharAt(--cursor);
+                    }
+                    break;
+                case TAB:
+                    keyIsTab = true;
+                    cursor = complete(prompt, line, cursor, previousKeyWasTab);
+                    break;
+                case CTRL_A:
+                    cursor = 0;
+                    break;
+                case CTRL_E:
+                    cursor = line.length();
+                    break;
+                case CTRL_U:
+                    line.delete(0, cursor);
+                    cursor = 0;
+                    break;
+                case ESCAPE:
+                    int introducer = input.read();
+                    if (introducer != '[' && introducer != 'O') {
+                        break;
+                    }
+                    switch (input.read()) {
+
+                        // Up: one command back in the history.
+                        case 'A':
+                            if (historyNumber > history.oldestNumber() && history.newestNumber() > 0) {
+                                if (historyNumber > history.newestNumber()) {
+                                    unfinishedLine = line.toString();
+                                }
+                                historyNumber--;
+                                line.replace(0, line.length(), history.get(historyNumber));
+                                cursor = line.length();
+                            }
+                            break;
+
+                        // Down: one command forward, back to the unfinished line past the newest one.
+                        case 'B':
+                            if (historyNumber <= history.newestNumber()) {
+                                historyNumber++;
+                                line.replace(0, line.length(), historyNumber > history.newestNumber() ? unfinishedLine : history.get(historyNumber));
+                                cursor = line.length();
+                            }
+                            break;
+                        case 'C':
+                            cursor = Math.min(cursor + 1, line.length());
+                            break;
+                        case 'D':
+                            cursor = Math.max(cursor - 1, 0);
+                            break;
+                        case 'H':
+                            cursor = 0;
+                            break;
+                        case 'F':
+                            cursor = line.length();
+                            break;
+
+                        // The delete key ('ESC [ 3 ~').
+                        case '3':
+                            if (input.read() == '~' && cursor < line.length()) {
+                                line.deleteCharAt(cursor);
+                            }
+                            break;
+                        default:
+                            break;
+                    }
+                    break;
+                default:
+                    if (key >= ' ') {
+                        line.insert(cursor++, (char) key);
+                    }
+                    break;
+            }
+
+            previousKeyWasTab = keyIsTab;
+            redraw(prompt, line, cursor);
+        }
+    }
+
+    // Completes the word before the cursor: a command name at the start of a command, otherwise a path.
+    // One candidate is completed in full; several are completed as far as they agree, and listed on a second Tab.
+    private int complete(String prompt, StringBuilder line, int cursor, boolean listCandidates) {
+        int wordStart = wordStart(line, cursor);
+        String word = unescape(line.substring(wordStart, cursor));
+        String before = line.substring(0, wordStart).trim();
+        boolean completingCommand = before.isEmpty() || before.endsWith("|") || before.endsWith("&");
+
+        List<String> candidates;
+        String directoryPart = "";
+        DirectoryCache.Listing listing = null;
+
+        if (completingCommand) {
+            candidates = commandNames.wordsStartingWith(word);
+        } else {
+            directoryPart = word.substring(0, word.lastIndexOf('/') + 1);
+            Path directory = session.getWorkingDirectory().toPath().resolve(directoryPart.isEmpty() ? "." : directoryPart);
+            try {
+                listing = DirectoryCache.list(directory);
+                candidates = listing.namesStartingWith(word.substring(directoryPart.length()));
+            } catch (IOException | RuntimeException e) {
+                candidates = List.of();
+            }
+        }
+
+        if (candidates.isEmpty()) {
+            bell();
+            return cursor;
+        }
+
+        String completion;
+        if (candidates.size() == 1) {
+            String name = candidates.get(0);
+            boolean isDirectory = listing != null && listing.entry(name) != null && listing.entry(name).isDirectory();
+            completion = escape(directoryPart + name) + (isDirectory ? "/" : " ");
+        } else {
+
+            // The candidates are sorted, so what they all start with is what the first and the last one start with.
+            String commonPrefix = commonPrefix(candidates.get(0), candidates.get(candidates.size() - 1));
+            if (directoryPart.length() + commonPrefix.length() <= word.length()) {
+                if (listCandidates) {
+                    listCandidates(candidates, listing);
+                    output.print(prompt);
+                } else {
+                    bell();
+                }
+                return cursor;
+            }
+            completion = escape(directoryPart + commonPrefix);
+        }
+
+        line.replace(wordStart, cursor, completion);
+        return wordStart + completion.length();
+    }
+
+    // -- HELPER METHODS ---------------------
+
+    // Reprints the prompt and the line, clears what is left of the old line, then puts the cursor back in place.
+    private void redraw(String prompt, StringBuilder line, int cursor) {
+        StringBuilder screen = new StringBuilder(prompt.length() + line.length() + 16);
+        screen.append('\r').append(prompt).append(line).append("\u001B[K");
+        if (cursor < line.length()) {
+            screen.append("\u001B[").append(line.length() - cursor).append('D');
+        }
+        output.print(screen);
+        output.flush();
+    }
+
+    // Prints the candidates in rows (directories with a trailing '/'), at most MAX_LISTED_CANDIDATES of them.
+    private void listCandidates(List<String> candidates, DirectoryCache.Listing listing) {
+        int listed = Math.min(candidates.size(), MAX_LISTED_CANDIDATES);
+        int columnWidth = 0;
+        for (int candidateIndex = 0; candidateIndex < listed; candidateIndex++) {
+            columnWidth = Math.max(columnWidth, candidates.get(candidateIndex).length() + 3);
+        }
+        int columns = Math.max(1, LISTING_WIDTH / columnWidth);
+
+        StringBuilder candidateList = new StringBuilder("\n");
+        for (int candidateIndex = 0; candidateIndex < listed; candidateIndex++) {
+            String candidate = candidates.get(candidateIndex);
+            DirectoryCache.Entry entry = listing == null ? null : listing.entry(candidate);
+            String shownCandidate = (entry != null && entry.isDirectory()) ? candidate + "/" : candidate;
+
+            candidateList.append(shownCandidate);
+            if ((candidateIndex + 1) % columns == 0 || candidateIndex == listed - 1) {
+                candidateList.append('\n');
+            } else {
+                candidateList.append(" ".repeat(columnWidth - shownCandidate.length()));
+            }
+        }
+        if (candidates.size() > listed) {
+            candidateList.append("... and ").append(candidates.size() - listed).append(" more\n");
+        }
+        output.print(candidateList);
+    }
+
+    private void bell() {
+        output.print('\u0007');
+    }
+
+    // Returns where the word before the cursor starts (after the last space or operator that is not escaped).
+    private static int wordStart(CharSequence line, int cursor) {
+        int wordStart = 0;
+        for (int charIndex = 0; charIndex < cursor; charIndex++) {
+            char character = line.charAt(charIndex);
+            if (character == '\\') {
+                charIndex++;
+            } else if (character == ' ' || character == '|' || character == '&') {
+                wordStart = charIndex + 1;
+            }
+        }
+        return Math.min(wordStart, cursor);
+    }
+
+    private static String escape(String word) {
+        StringBuilder escapedWord = new StringBuilder(word.length() + 8);
+        for (int charIndex = 0; charIndex < word.length(); charIndex++) {
+            char character = word.charAt(charIndex);
+            if (SPECIAL_CHARACTERS.indexOf(character) != -1) {
+                escapedWord.append('\\');
+            }
+            escapedWord.append(character);
+        }
+        return escapedWord.toString();
+    }
+
+    private static String unescape(String word) {
+        StringBuilder unescapedWord = new StringBuilder(word.length());
+        for (int charIndex = 0; charIndex < word.length(); charIndex++) {
+            char character = word.charAt(charIndex);
+            if (character == '\\' && charIndex + 1 < word.length()) {
+                character = word.charAt(++charIndex);
+            }
+            unescapedWord.append(character);
+        }
+        return unescapedWord.toString();
+    }
+
+    private static String commonPrefix(String first, String second) {
+        int length = 0;
+        while (length < first.length() && length < second.length() && first.charAt(length) == second.charAt(length)) {
+            length++;
+        }
+        return first.substring(0, length);
+    }
+
+    // Runs 'stty' on the terminal; returns what it printed (trimmed), or null if it failed.
+    private static String stty(String... arguments) {
+        List<String> command = new ArrayList<>();
+        command.add("stty");
+        command.addAll(List.of(arguments));
+
+        try {
+            Process process = new ProcessBuilder(command)
+                    .redirectInput(ProcessBuilder.Redirect.from(TTY))
+                    .redirectError(ProcessBuilder.Redirect.DISCARD)
+                    .start();
+            String printed = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8).trim();
+            return process.waitFor() == 0 ? printed : null;
+        } catch (IOException e) {
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    // -- NESTED CLASSES ---------------------
+
+    // A prefix tree of words; the words under a prefix come out in sorted order.
+    static class PrefixTrie {
+
+        private final Node root = new Node();
+
+        void add(String word) {
+            Node node = root;
+            for (int charIndex = 0; charIndex < word.length(); charIndex++) {
+                node = node.children.computeIfAbsent(word.charAt(charIndex), character -> new Node());
+            }
+            node.isWord = true;
+        }
+
+        // Returns every word starting with the prefix, sorted.
+        List<String> wordsStartingWith(String prefix) {
+            Node node = root;
+            for (int charIndex = 0; charIndex < prefix.length() && node != null; charIndex++) {
+                node = node.children.get(prefix.charAt(charIndex));
+            }
+
+            List<String> words = new ArrayList<>();
+            if (node != null) {
+                collectWords(node, new StringBuilder(prefix), words);
+            }
+            return words;
+        }
+
+        private static void collectWords(Node node, StringBuilder word, List<String> words) {
+            if (node.isWord) {
+                words.add(word.toString());
+            }
+            for (Map.Entry<Character, Node> child : node.children.entrySet()) {
+                word.append(child.getKey());
+                collectWords(child.getValue(), word, words);
+                word.setLength(word.length() - 1);
+            }
+        }
+
+        private static class Node {
+            final Map<Character, Node> children = new TreeMap<>();
+            boolean isWord;
+        }
+    }
+
+}
@@ -0,0 +1,140 @@
+// == IMPORTS =======================
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+// == CLASS =======================
+// LINE PIPE | A bounded queue of lines connecting two pipeline stages; a full pipe makes the writer wait.
+public class LinePipe {
+
+    // -- CONSTANT / UTILITY VARIABLES ------
+
+    // Compared by identity; marks that the writing stage is done.
+    private static final String END_OF_STREAM = new String("");
+
+    // -- OBJECT FIELDS ---------------------
+
+    private final BlockingQueue<String> lines;
+    private volatile boolean readerClosed;
+
+    // -- CONSTRUCTOR -------------------------
+
+    public LinePipe(int capacity) {
+        lines = new ArrayBlockingQueue<>(capacity);
+    }
+
+    // -- WRITING SIDE -----------------------
+
+    // Adds a line, waiting while the pipe is full; throws BrokenPipeException once the reader has stopped.
+    public void put(String line) {
+        if (readerClosed) {
+            throw new BrokenPipeException();
+        }
+        try {
+            lines.put(line);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BrokenPipeException();
+        }
+    }
+
+    // Tells the reader that no more lines are coming.
+    public void close() {
+        try {
+            lines.put(END_OF_STREAM);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Returns a print stream whose lines are put into this pipe (closing the stream closes the pipe).
+    public PrintStream openWriter() {
+        return new PrintStream(new LineOutputStream(), false, StandardCharsets.UTF_8);
+    }
+
+    // -- READING SIDE -----------------------
+
+    // Returns the next line, waiting for one if needed; returns null once the writer is done.
+    public String take() throws InterruptedException {
+        if (readerClosed) {
+            return null;
+        }
+        String line = lines.take();
+        if (line == END_OF_STREAM) {
+            readerClosed = true;
+            return null;
+        }
+        return line;
+    }
+
+    // Stops reading; a writer still waiting on the pipe is released and fails on its next line.
+    public void closeReader() {
+        readerClosed = true;
+        lines.clear();
+    }
+
+    // -- NESTED CLASSES ---------------------
+
+    // Thrown at a writing stage when the stage reading from it has already finished.
+    public static class BrokenPipeException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        public BrokenPipeException() {
+            super("Broken pipe.", null, false, false);
+        }
+    }
+
+    // Collects written bytes and puts every completed line into the pipe.
+    private class LineOutputStream extends OutputStream {
+
+        private final ByteArrayOutputStream currentLine = new ByteArrayOutputStream(128);
+        private boolean closed;
+
+        @Override
+        public void write(int b) {
+            if (b == '\n') {
+                putCurrentLine();
+            } else {
+                currentLine.write(b);
+            }
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) {
+            int lineStart = offset;
+            for (int byteIndex = offset; byteIndex < offset + length; byteIndex++) {
+                if (bytes[byteIndex] == '\n') {
+                    currentLine.write(bytes, lineStart, byteIndex - lineStart);
+                    putCurrentLine();
+                    lineStart = byteIndex + 1;
+                }
+            }
+            currentLine.write(bytes, lineStart, offset + length - lineStart);
+        }
+
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+
+            // An unfinished last line still counts as a line.
+            if (currentLine.size() > 0) {
+                putCurrentLine();
+            }
+            LinePipe.this.close();
+        }
+
+        private void putCurrentLine() {
+            String line = currentLine.toString(StandardCharsets.UTF_8);
+            currentLine.reset();
+            put(line.endsWith("\r") ? line.substring(0, line.length() - 1) : line);
+        }
+    }
+
+}
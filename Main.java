@@ -4,11 +4,64 @@ USERNAME: WORGHET
 DATE: JANUARY 2025
  */
 
+import java.io.FileNotFoundException;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
 // == CLASS =======================
 // MAIN | Launches the terminal.
 public class Main {
     public static void main(String[] args) {
 
+        // Script mode: run every command in the given file ('-' for standard input), then exit with its status.
+        if (args.length >= 2 && args[0].equals("--script")) {
+            if (args[1].equals("-")) {
+                System.exit(Terminal.launchBatch(new InputStreamReader(System.in), "stdin"));
+            }
+            try {
+                System.exit(Terminal.launchBatch(new FileReader(args[1]), args[1]));
+            } catch (FileNotFoundException e) {
+                System.err.println("Cannot open the script " + args[1] + ": " + e.getMessage());
+                System.exit(1);
+            }
+        }
+
+        // Server mode: every connection to the port gets a session of its own. Only this machine can connect, unless
+        // '--bind address' says otherwise; connections must send the token (PSEUDOBASH_TOKEN, or a generated one) first.
+        if (args.length >= 2 && args[0].equals("--serve")) {
+            InetAddress address = null;
+            try {
+                if (args.length >= 4 && args[2].equals("--bind")) {
+                    address = InetAddress.getByName(args[3]);
+                }
+            } catch (UnknownHostException e) {
+                System.err.println("Unknown address to bind to: " + args[3]);
+                System.exit(1);
+            }
+
+            String token = System.getenv("PSEUDOBASH_TOKEN");
+            if (token == null || token.isEmpty()) {
+                token = SessionServer.generateToken();
+                System.out.println("Session token (send it as the first line): " + token);
+            }
+
+            try (SessionServer server = new SessionServer(address, Integer.parseInt(args[1]), token, System.out)) {
+                server.serve();
+            } catch (IOException | NumberFormatException e) {
+                System.err.println("Could not serve on port " + args[1] + ": " + e);
+                System.exit(1);
+            }
+            return;
+        }
+
+        // Batch mode: standard input is a script (ex. piped in), so run it without prompts.
+        if (args.length >= 1 && args[0].equals("--batch")) {
+            System.exit(Terminal.launchBatch(new InputStreamReader(System.in), "stdin"));
+        }
+
         // Launch terminal.
         Terminal.launchTerminal();
 
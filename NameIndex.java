@@ -0,0 +1,486 @@
+// == IMPORTS =======================
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+// == CLASS =======================
+// NAME INDEX | An on-disk index of every resource name under a directory; 'locate' answers from it without walking the tree.
+//
+// Index file layout (big-endian):
+//   header     | magic, version, offsets of the three sections below
+//   paths      | path count, path start offsets, UTF-8 relative paths (sorted)
+//   trigrams   | trigram count, sorted trigram keys, posting start offsets, postings (path numbers, ascending)
+//   directories| root, then every directory with its modification time and children (only read by refreshes)
+public class NameIndex {
+
+    // -- CONSTANT / UTILITY VARIABLES ------
+
+    static final Path INDEX_DIRECTORY = Paths.get(System.getProperty("user.home"), ".pseudobash-index");
+    static final int MAGIC = 0x50424958; // "PBIX"
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 4 + 4 + 8 + 8 + 8;
+
+    // The offsets inside the index are ints (and 'locate' maps it whole), so an index can be at most this large.
+    static final long MAX_INDEX_BYTES = Integer.MAX_VALUE;
+
+    // -- COMMAND REGISTRATION ---------------
+
+    static void registerCommands(CommandRegistry registry) {
+        registry.register(Command.of("index", 1, false, false,
+                "[ index (build + none, directory_name) | Builds (or refreshes) the name index that 'locate' searches. ]",
+                NameIndex::indexCommand));
+
+        registry.register(Command.of("locate", 1, false, false,
+                "[ locate (text) | Prints every indexed resource whose name contains the text (build the index with 'index build'). ]",
+                (terminal, tokenizedCommand) -> locate(terminal, tokenizedCommand[1])));
+    }
+
+    private static void indexCommand(Terminal terminal, String[] tokenizedCommand) throws IOException, InterruptedException {
+        if (!tokenizedCommand[1].equalsIgnoreCase("build")) {
+            throw new IndexOutOfBoundsException();
+        }
+
+        File rootDirectory = (tokenizedCommand.length > 2) ? new File(terminal.getWorkingDirectory(), tokenizedCommand[2]) : terminal.getWorkingDirectory();
+        if (!rootDirectory.isDirectory()) {
+            terminal.printError("No such directory exists.");
+            return;
+        }
+
+        long startTime = System.nanoTime();
+        BuildResult result = build(rootDirectory.toPath().toRealPath());
+        if (result.tooLarge) {
+            terminal.printError("The index of that directory would be larger than 2 GB; index a smaller directory instead.");
+            return;
+        }
+        terminal.getOutput().printf("Indexed %,d resources in %.2fs (%,d directories listed, %,d unchanged).%n",
+                result.pathCount, (System.nanoTime() - startTime) / 1e9, result.listedDirectories, result.reusedDirectories);
+    }
+
+    // -- BUILDING ---------------------------
+
+    // Scans the tree (reusing the listing of every directory whose modification time has not changed) and writes the index.
+    static BuildResult build(Path rootDirectory) throws IOException, InterruptedException {
+
+        Path indexFile = indexFileFor(rootDirectory);
+        Map<String, DirectoryListing> previousDirectories = readDirectories(indexFile, rootDirectory);
+        Map<String, DirectoryListing> directories = new HashMap<>();
+        BuildResult result = new BuildResult();
+
+        // Walk the tree iteratively; directories are keyed by their path relative to the root ("" is the root itself).
+        Deque<String> pendingDirectories = new ArrayDeque<>();
+        pendingDirectories.push("");
+        while (!pendingDirectories.isEmpty()) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+
+            String relativePath = pendingDirectories.pop();
+            Path directory = relativePath.isEmpty() ? rootDirectory : rootDirectory.resolve(relativePath);
+
+            long modifiedTime;
+            try {
+                modifiedTime = Files.getLastModifiedTime(directory, LinkOption.NOFOLLOW_LINKS).toMillis();
+            } catch (IOException e) {
+                continue;
+            }
+
+            // An unchanged modification time means no entry was added, removed or renamed here.
+            DirectoryListing listing = previousDirectories.get(relativePath);
+            if (listing != null && listing.modifiedTime == modifiedTime) {
+                result.reusedDirectories++;
+            } else {
+                listing = listDirectory(directory, modifiedTime);
+                result.listedDirectories++;
+            }
+            directories.put(relativePath, listing);
+
+            for (int childIndex = 0; childIndex < listing.names.size(); childIndex++) {
+                if (listing.isDirectory.get(childIndex)) {
+                    pendingDirectories.push(childPath(relativePath, listing.names.get(childIndex)));
+                }
+            }
+        }
+
+        // Every child of every directory is one indexed path.
+        List<String> paths = new ArrayList<>();
+        for (Map.Entry<String, DirectoryListing> directory : directories.entrySet()) {
+            for (String name : directory.getValue().names) {
+                paths.add(childPath(directory.getKey(), name));
+            }
+        }
+        Collections.sort(paths);
+        result.pathCount = paths.size();
+
+        result.tooLarge = !writeIndex(indexFile, rootDirectory, paths, directories);
+        return result;
+    }
+
+    private static DirectoryListing listDirectory(Path directory, long modifiedTime) {
+        DirectoryListing listing = new DirectoryListing(modifiedTime);
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+            for (Path entry : entries) {
+                listing.names.add(entry.getFileName().toString());
+                listing.isDirectory.add(Files.isDirectory(entry, LinkOption.NOFOLLOW_LINKS));
+            }
+        } catch (IOException | DirectoryIteratorException e) {
+            // Unreadable directories are indexed as empty.
+        }
+        return listing;
+    }
+
+    // Writes the index into a temporary file of its own, then renames it over the old one (a crash, or another session
+    // building the same index, never leaves half an index); returns false, writing nothing, if it would be too large.
+    private static boolean writeIndex(Path indexFile, Path rootDirectory, List<String> paths, Map<String, DirectoryListing> directories) throws IOException {
+
+        Files.createDirectories(INDEX_DIRECTORY);
+        Path temporaryFile = Files.createTempFile(INDEX_DIRECTORY, "." + indexFile.getFileName() + ".", ".tmp");
+        try {
+            long pathsOffset, trigramsOffset, directoriesOffset;
+            try (DataOutputStream indexOutput = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporaryFile), 1 << 16))) {
+                indexOutput.write(new byte[HEADER_BYTES]);
+
+                // Paths: start offsets, then the UTF-8 bytes.
+                pathsOffset = indexOutput.size();
+                byte[][] encodedPaths = new byte[paths.size()][];
+                indexOutput.writeInt(paths.size());
+                int pathStart = 0;
+                for (int pathIndex = 0; pathIndex < paths.size(); pathIndex++) {
+                    encodedPaths[pathIndex] = paths.get(pathIndex).getBytes(StandardCharsets.UTF_8);
+                    indexOutput.writeInt(pathStart);
+                    pathStart += encodedPaths[pathIndex].length;
+                }
+                indexOutput.writeInt(pathStart);
+                for (byte[] encodedPath : encodedPaths) {
+                    indexOutput.write(encodedPath);
+                }
+
+                // Trigrams of every name; each lists the paths whose name contains it.
+                trigramsOffset = indexOutput.size();
+                TreeMap<Long, IntList> postings = new TreeMap<>();
+                for (int pathIndex = 0; pathIndex < paths.size(); pathIndex++) {
+                    String name = nameOf(paths.get(pathIndex)).toLowerCase();
+                    for (int charIndex = 0; charIndex + 3 <= name.length(); charIndex++) {
+                        postings.computeIfAbsent(trigramKey(name, charIndex), key -> new IntList()).addIfNotLast(pathIndex);
+                    }
+                }
+                indexOutput.writeInt(postings.size());
+                for (long trigram : postings.keySet()) {
+                    indexOutput.writeLong(trigram);
+                }
+                int postingStart = 0;
+                for (IntList pathNumbers : postings.values()) {
+                    indexOutput.writeInt(postingStart);
+                    postingStart += pathNumbers.size;
+                }
+                indexOutput.writeInt(postingStart);
+                for (IntList pathNumbers : postings.values()) {
+                    for (int valueIndex = 0; valueIndex < pathNumbers.size; valueIndex++) {
+                        indexOutput.writeInt(pathNumbers.values[valueIndex]);
+                    }
+                }
+
+                // Directories, for the next refresh.
+                directoriesOffset = indexOutput.size();
+                indexOutput.writeUTF(rootDirectory.toString());
+                indexOutput.writeInt(directories.size());
+                for (Map.Entry<String, DirectoryListing> directory : directories.entrySet()) {
+                    DirectoryListing listing = directory.getValue();
+                    indexOutput.writeUTF(directory.getKey());
+                    indexOutput.writeLong(listing.modifiedTime);
+                    indexOutput.writeInt(listing.names.size());
+                    for (int childIndex = 0; childIndex < listing.names.size(); childIndex++) {
+                        indexOutput.writeUTF(listing.names.get(childIndex));
+                        indexOutput.writeBoolean(listing.isDirectory.get(childIndex));
+                    }
+                }
+            }
+
+            // DataOutputStream.size() stops counting at Integer.MAX_VALUE, so the offsets above are only right below it.
+            if (Files.size(temporaryFile) > MAX_INDEX_BYTES) {
+                return false;
+            }
+
+            // Fill in the header now that the section offsets are known.
+            try (FileChannel indexChannel = FileChannel.open(temporaryFile, StandardOpenOption.WRITE)) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+                header.putInt(MAGIC).putInt(VERSION).putLong(pathsOffset).putLong(trigramsOffset).putLong(directoriesOffset).flip();
+                indexChannel.write(header, 0);
+            }
+
+            Files.move(temporaryFile, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } finally {
+            Files.deleteIfExists(temporaryFile);
+        }
+    }
+
+    // Reads the directory listings of an existing index of the same root (empty if there is none).
+    private static Map<String, DirectoryListing> readDirectories(Path indexFile, Path rootDirectory) {
+        Map<String, DirectoryListing> directories = new HashMap<>();
+        if (!Files.exists(indexFile)) {
+            return directories;
+        }
+
+        try (FileChannel indexChannel = FileChannel.open(indexFile, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            indexChannel.read(header, 0);
+            header.flip();
+            if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+                return directories;
+            }
+            header.getLong();
+            header.getLong();
+            indexChannel.position(header.getLong());
+
+            DataInputStream indexInput = new DataInputStream(new BufferedInputStream(Channels.newInputStream(indexChannel), 1 << 16));
+            if (!indexInput.readUTF().equals(rootDirectory.toString())) {
+                return directories;
+            }
+            int directoryCount = indexInput.readInt();
+            for (int directoryIndex = 0; directoryIndex < directoryCount; directoryIndex++) {
+                String relativePath = indexInput.readUTF();
+                DirectoryListing listing = new DirectoryListing(indexInput.readLong());
+                int childCount = indexInput.readInt();
+                for (int childIndex = 0; childIndex < childCount; childIndex++) {
+                    listing.names.add(indexInput.readUTF());
+                    listing.isDirectory.add(indexInput.readBoolean());
+                }
+                directories.put(relativePath, listing);
+            }
+        } catch (IOException e) {
+            // A damaged index is simply rebuilt from scratch.
+            directories.clear();
+        }
+        return directories;
+    }
+
+    // -- SEARCHING --------------------------
+
+    // Searches every index for names containing the text, printing each match's full path as it is found.
+    private static void locate(Terminal terminal, String text) throws IOException {
+        List<Path> indexFiles = new ArrayList<>();
+        if (Files.isDirectory(INDEX_DIRECTORY)) {
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(INDEX_DIRECTORY, "*.idx")) {
+                entries.forEach(indexFiles::add);
+            }
+        }
+
+        if (indexFiles.isEmpty()) {
+            terminal.printError("There is no index yet. Use 'index build (directory_name)' to make one.");
+            return;
+        }
+
+        for (Path indexFile : indexFiles) {
+            new MappedIndex(indexFile).search(text.toLowerCase(), terminal.getOutput());
+        }
+    }
+
+    // -- HELPER METHODS ---------------------
+
+    private static Path indexFileFor(Path rootDirectory) {
+        String safeName = rootDirectory.getFileName() == null ? "root" : rootDirectory.getFileName().toString().replaceAll("[^A-Za-z0-9_.-]", "_");
+        return INDEX_DIRECTORY.resolve(safeName + "-" + Integer.toHexString(rootDirectory.toString().hashCode()) + ".idx");
+    }
+
+    private static String childPath(String directoryPath, String name) {
+        return directoryPath.isEmpty() ? name : directoryPath + File.separator + name;
+    }
+
+    private static String nameOf(String path) {
+        return path.substring(path.lastIndexOf(File.separatorChar) + 1);
+    }
+
+    // Packs three (lowercase) characters into one key.
+    private static long trigramKey(CharSequence text, int start) {
+        return ((long) text.charAt(start) << 32) | ((long) text.charAt(start + 1) << 16) | text.charAt(start + 2);
+    }
+
+    // -- NESTED CLASSES ---------------------
+
+    // An index file mapped into memory; searching reads only the trigram postings and the candidate paths.
+    private static class MappedIndex {
+
+        private final MappedByteBuffer index;
+        private final String rootDirectory;
+        private final int pathCount, pathOffsetsStart, pathBytesStart;
+        private final int trigramCount, trigramKeysStart, postingOffsetsStart, postingsStart;
+
+        MappedIndex(Path indexFile) throws IOException {
+            try (FileChannel indexChannel = FileChannel.open(indexFile, StandardOpenOption.READ)) {
+                if (indexChannel.size() > MAX_INDEX_BYTES) {
+                    throw new IOException("Index file too large: " + indexFile);
+                }
+                index = indexChannel.map(FileChannel.MapMode.READ_ONLY, 0, indexChannel.size());
+            }
+            if (index.getInt(0) != MAGIC || index.getInt(4) != VERSION) {
+                throw new IOException("Unsupported index file: " + indexFile);
+            }
+
+            int pathsOffset = (int) index.getLong(8), trigramsOffset = (int) index.getLong(16), directoriesOffset = (int) index.getLong(24);
+
+            pathCount = index.getInt(pathsOffset);
+            pathOffsetsStart = pathsOffset + 4;
+            pathBytesStart = pathOffsetsStart + (pathCount + 1) * 4;
+
+            trigramCount = index.getInt(trigramsOffset);
+            trigramKeysStart = trigramsOffset + 4;
+            postingOffsetsStart = trigramKeysStart + trigramCount * 8;
+            postingsStart = postingOffsetsStart + (trigramCount + 1) * 4;
+
+            // The root is the first (modified UTF-8) string of the directory section.
+            ByteBuffer rootBuffer = index.duplicate();
+            rootBuffer.position(directoriesOffset);
+            byte[] encodedRoot = readBytes(rootBuffer, 2 + (index.getShort(directoriesOffset) & 0xFFFF));
+            rootDirectory = new DataInputStream(new ByteArrayInputStream(encodedRoot)).readUTF();
+        }
+
+        void search(String text, PrintStream output) {
+
+            // Short texts have no trigrams; check every name.
+            if (text.length() < 3) {
+                for (int pathIndex = 0; pathIndex < pathCount; pathIndex++) {
+                    printIfMatches(pathIndex, text, output);
+                }
+                return;
+            }
+
+            // Otherwise only the paths that contain every trigram of the text can match.
+            int[][] postingRanges = new int[text.length() - 2][];
+            for (int charIndex = 0; charIndex + 3 <= text.length(); charIndex++) {
+                int trigramIndex = findTrigram(trigramKey(text, charIndex));
+                if (trigramIndex < 0) {
+                    return;
+                }
+                postingRanges[charIndex] = new int[]{index.getInt(postingOffsetsStart + trigramIndex * 4), index.getInt(postingOffsetsStart + (trigramIndex + 1) * 4)};
+            }
+            Arrays.sort(postingRanges, (first, second) -> Integer.compare(first[1] - first[0], second[1] - second[0]));
+
+            // Walk the shortest posting list; binary-search the candidates in the others.
+            int[] shortest = postingRanges[0];
+            candidates:
+            for (int postingIndex = shortest[0]; postingIndex < shortest[1]; postingIndex++) {
+                int pathIndex = index.getInt(postingsStart + postingIndex * 4);
+                for (int rangeIndex = 1; rangeIndex < postingRanges.length; rangeIndex++) {
+                    if (!containsPosting(postingRanges[rangeIndex], pathIndex)) {
+                        continue candidates;
+                    }
+                }
+                printIfMatches(pathIndex, text, output);
+            }
+        }
+
+        private void printIfMatches(int pathIndex, String text, PrintStream output) {
+            String path = pathAt(pathIndex);
+            if (nameOf(path).toLowerCase().contains(text)) {
+                output.println(rootDirectory + File.separator + path);
+            }
+        }
+
+        private String pathAt(int pathIndex) {
+            int start = index.getInt(pathOffsetsStart + pathIndex * 4), end = index.getInt(pathOffsetsStart + (pathIndex + 1) * 4);
+            ByteBuffer pathBuffer = index.duplicate();
+            pathBuffer.position(pathBytesStart + start);
+            return new String(readBytes(pathBuffer, end - start), StandardCharsets.UTF_8);
+        }
+
+        private int findTrigram(long trigram) {
+            int low = 0, high = trigramCount - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                long middleKey = index.getLong(trigramKeysStart + middle * 8);
+                if (middleKey < trigram) {
+                    low = middle + 1;
+                } else if (middleKey > trigram) {
+                    high = middle - 1;
+                } else {
+                    return middle;
+                }
+            }
+            return -1;
+        }
+
+        private boolean containsPosting(int[] postingRange, int pathIndex) {
+            int low = postingRange[0], high = postingRange[1] - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                int middleValue = index.getInt(postingsStart + middle * 4);
+                if (middleValue < pathIndex) {
+                    low = middle + 1;
+                } else if (middleValue > pathIndex) {
+                    high = middle - 1;
+                } else {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private static byte[] readBytes(ByteBuffer buffer, int length) {
+            byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            return bytes;
+        }
+    }
+
+    // The children of one directory, and the modification time they were listed at.
+    private static class DirectoryListing {
+        final long modifiedTime;
+        final List<String> names = new ArrayList<>();
+        final List<Boolean> isDirectory = new ArrayList<>();
+
+        DirectoryListing(long modifiedTime) {
+            this.modifiedTime = modifiedTime;
+        }
+    }
+
+    // A growable list of ints (path numbers), without boxing.
+    private static class IntList {
+        int[] values = new int[4];
+        int size;
+
+        void addIfNotLast(int value) {
+            if (size > 0 && values[size - 1] == value) {
+                return;
+            }
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+    }
+
+    // What a build did.
+    static class BuildResult {
+        int pathCount, listedDirectories, reusedDirectories;
+        boolean tooLarge;
+    }
+
+}
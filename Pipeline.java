@@ -0,0 +1,125 @@
+// == IMPORTS =======================
+
+import java.io.PrintStream;
+
+// == CLASS =======================
+// PIPELINE | Runs 'a | b | c' with every stage on its own thread, connected by bounded line pipes.
+public class Pipeline {
+
+    // -- CONSTANT / UTILITY VARIABLES ------
+
+    // Lines a pipe holds before its writing stage has to wait; keeps memory constant for any amount of output.
+    static final int PIPE_CAPACITY = 1024;
+
+    // -- COMMAND REGISTRATION ---------------
+
+    static void registerCommands(CommandRegistry registry) {
+        registry.register(Command.of("filter", 1, false, false,
+                "[ filter (text) | Prints only the piped lines that contain the text. Ex. 'read app.log | filter ERROR'. ]",
+                (terminal, tokenizedCommand) -> filterLines(terminal, tokenizedCommand[1])));
+
+        registry.register(Command.of("count", 0, false, false,
+                "[ count (none) | Prints how many lines are piped into it. Ex. 'lookhere | count'. ]",
+                (terminal, tokenizedCommand) -> countLines(terminal)));
+    }
+
+    // -- PIPELINE METHODS -------------------
+
+    // Runs every stage concurrently and waits for all of them; returns whether the last stage failed.
+    static boolean run(Terminal session, String[][] stages) {
+
+        int lastStage = stages.length - 1;
+        Terminal[] stageTerminals = new Terminal[stages.length];
+        Thread[] stageThreads = new Thread[stages.length];
+
+        // Connect each stage to the next one; the last stage prints into the session's own output.
+        LinePipe stageInput = null;
+        for (int stageIndex = 0; stageIndex <= lastStage; stageIndex++) {
+            LinePipe stagePipe = (stageIndex == lastStage) ? null : new LinePipe(PIPE_CAPACITY);
+            PrintStream stageOutput = (stagePipe == null) ? session.getOutput() : stagePipe.openWriter();
+
+            Terminal stageTerminal = session.forkStage(stageInput, stageOutput);
+            String[] tokenizedCommand = stages[stageIndex];
+            LinePipe readPipe = stageInput;
+
+            stageTerminals[stageIndex] = stageTerminal;
+            stageThreads[stageIndex] = new Thread(() -> runStage(stageTerminal, tokenizedCommand, readPipe, stagePipe == null ? null : stageOutput),
+                    "pipeline-stage-" + stageIndex + "-" + tokenizedCommand[0]);
+            stageThreads[stageIndex].setDaemon(true);
+
+            stageInput = stagePipe;
+        }
+
+        for (Thread stageThread : stageThreads) {
+            stageThread.start();
+        }
+
+        // Wait for every stage to finish (stopping all of them if this thread gets interrupted).
+        for (Thread stageThread : stageThreads) {
+            try {
+                stageThread.join();
+            } catch (InterruptedException e) {
+                for (Thread threadToStop : stageThreads) {
+                    threadToStop.interrupt();
+                }
+                Thread.currentThread().interrupt();
+                return true;
+            }
+        }
+
+        session.getOutput().flush();
+        return stageTerminals[lastStage].hasCommandFailed();
+    }
+
+    // Runs one stage, then releases its neighbours: the stage before may stop writing, the stage after sees the end.
+    private static void runStage(Terminal stageTerminal, String[] tokenizedCommand, LinePipe stageInput, PrintStream pipeOutput) {
+        try {
+            stageTerminal.executeCommand(tokenizedCommand);
+        } finally {
+            if (stageInput != null) {
+                stageInput.closeReader();
+            }
+            if (pipeOutput != null) {
+                try {
+                    pipeOutput.close();
+                } catch (LinePipe.BrokenPipeException e) {
+                    // The next stage already stopped reading; nothing left to tell it.
+                }
+            }
+        }
+    }
+
+    // -- STREAMING COMMANDS -----------------
+
+    // Prints every piped line that contains the given text.
+    private static void filterLines(Terminal terminal, String text) throws InterruptedException {
+        LinePipe pipedInput = terminal.getPipedInput();
+        if (pipedInput == null) {
+            terminal.printError("Nothing is piped into 'filter'. Ex. 'read app.log | filter ERROR'.");
+            return;
+        }
+
+        PrintStream output = terminal.getOutput();
+        for (String line = pipedInput.take(); line != null; line = pipedInput.take()) {
+            if (line.contains(text)) {
+                output.println(line);
+            }
+        }
+    }
+
+    // Prints the amount of piped lines.
+    private static void countLines(Terminal terminal) throws InterruptedException {
+        LinePipe pipedInput = terminal.getPipedInput();
+        if (pipedInput == null) {
+            terminal.printError("Nothing is piped into 'count'. Ex. 'lookhere | count'.");
+            return;
+        }
+
+        long lineCount = 0;
+        while (pipedInput.take() != null) {
+            lineCount++;
+        }
+        terminal.getOutput().println(lineCount);
+    }
+
+}
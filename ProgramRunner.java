@@ -0,0 +1,328 @@
+// == IMPORTS =======================
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+// == CLASS =======================
+// PROGRAM RUNNER | Runs real programs and scripts from the working directory, printing their output as it comes.
+//
+// 'run program args' streams the program's output and errors while it runs; piped lines go to its input. With
+// '::: a b c' the program runs once per argument, up to -j at a time, and each run's output is printed whole, in
+// argument order, so parallel runs do not mix their lines. The program's exit code becomes '$?'. Like a real shell, a
+// bare name is only looked up in PATH; a program in the working directory is run with a path (ex. './build.sh').
+public class ProgramRunner {
+
+    // -- CONSTANT / UTILITY VARIABLES ------
+
+    static final int PUMP_BUFFER_BYTES = 8192;
+
+    // A stopped program gets this long to exit by itself before it is killed.
+    static final long STOP_GRACE_MILLIS = 2000;
+
+    // Output still arriving after the program exited (ex. from a child it left running) is waited for this long.
+    static final long DRAIN_MILLIS = 2000;
+
+    // Exit codes like the ones of the usual shell tools: timed out, and could not be started.
+    static final int TIMED_OUT_STATUS = 124, NOT_STARTED_STATUS = 127;
+
+    // Scripts that are not marked as executable are run with the interpreter for their extension.
+    private static final Map<String, String> INTERPRETERS = Map.of(
+            ".sh", "sh",
+            ".py", "python3");
+
+    // -- COMMAND REGISTRATION ----------------
+
+    static void registerCommands(CommandRegistry registry) {
+        registry.register(Command.of("run", 1, true, false,
+                "[ run (program + arguments, --timeout + seconds, -j + job_count + program + ::: + arguments) | Runs a program from PATH, or a script by its path (ex. ./script.sh), in the working directory; '::: a b c' runs it once per argument, -j at a time. ]",
+                ProgramRunner::run));
+    }
+
+    // -- COMMAND METHODS --------------------
+
+    private static void run(Terminal terminal, String[] tokenizedCommand) throws IOException, InterruptedException {
+        long timeoutMillis = 0;
+        int parallelJobs = Runtime.getRuntime().availableProcessors();
+
+        // Options come before the program.
+        int tokenIndex = 1;
+        try {
+            while (tokenIndex + 1 < tokenizedCommand.length && tokenizedCommand[tokenIndex].startsWith("-")) {
+                if (tokenizedCommand[tokenIndex].equals("--timeout")) {
+                    timeoutMillis = (long) (Double.parseDouble(tokenizedCommand[tokenIndex + 1]) * 1000);
+                } else if (tokenizedCommand[tokenIndex].equals("-j")) {
+                    parallelJobs = Integer.parseInt(tokenizedCommand[tokenIndex + 1]);
+                } else {
+                    break;
+                }
+                tokenIndex += 2;
+            }
+        } catch (NumberFormatException e) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (tokenIndex >= tokenizedCommand.length || timeoutMillis < 0 || parallelJobs < 1) {
+            throw new IndexOutOfBoundsException();
+        }
+
+        List<String> command = new ArrayList<>();
+        List<String> fanOutArguments = null;
+        for (; tokenIndex < tokenizedCommand.length; tokenIndex++) {
+            if (tokenizedCommand[tokenIndex].equals(":::") && fanOutArguments == null) {
+                fanOutArguments = new ArrayList<>();
+            } else if (fanOutArguments != null) {
+                fanOutArguments.add(tokenizedCommand[tokenIndex]);
+            } else {
+                command.add(tokenizedCommand[tokenIndex]);
+            }
+        }
+        if (command.isEmpty()) {
+            throw new IndexOutOfBoundsException();
+        }
+
+        if (fanOutArguments == null) {
+            runProgram(terminal, command, timeoutMillis);
+        } else {
+            runFanOut(terminal, command, fanOutArguments, parallelJobs, timeoutMillis);
+        }
+    }
+
+    // Runs the program once: output and errors are pumped into the session as they come, piped lines into its input.
+    private static void runProgram(Terminal terminal, List<String> command, long timeoutMillis) throws IOException, InterruptedException {
+        ProcessBuilder builder = processBuilder(terminal, command);
+        LinePipe pipedInput = terminal.getPipedInput();
+
+        // Someone typing into this machine's terminal can answer the program directly; otherwise it reads the pipe, or nothing.
+        boolean typedInput = pipedInput == null && terminal.isConsole();
+        if (typedInput) {
+            builder.redirectInput(ProcessBuilder.Redirect.INHERIT);
+        }
+
+        Process process;
+        try {
+            process = builder.start();
+        } catch (IOException e) {
+            terminal.printError("The program could not be started: " + e.getMessage());
+            terminal.setExitStatus(NOT_STARTED_STATUS);
+            return;
+        }
+
+        boolean flushEachChunk = terminal.isInteractive();
+        Thread outputPump = startThread("run-output", () -> pump(process.getInputStream(), terminal.getOutput(), flushEachChunk));
+        Thread errorPump = startThread("run-errors", () -> pump(process.getErrorStream(), terminal.getErrorOutput(), flushEachChunk));
+        Thread inputFeeder = null;
+        if (pipedInput != null) {
+            inputFeeder = startThread("run-input", () -> feed(pipedInput, process.getOutputStream()));
+        } else if (!typedInput) {
+            process.getOutputStream().close();
+        }
+
+        try {
+            boolean finished = waitFor(process, timeoutMillis);
+            outputPump.join(DRAIN_MILLIS);
+            errorPump.join(DRAIN_MILLIS);
+            terminal.getOutput().flush();
+
+            if (!finished) {
+                terminal.printError("The program ran longer than " + timeoutMillis / 1000.0 + " seconds and was stopped.");
+                terminal.setExitStatus(TIMED_OUT_STATUS);
+            } else {
+                terminal.setExitStatus(process.exitValue());
+            }
+        } catch (InterruptedException e) {
+            stop(process);
+            throw e;
+        } finally {
+            if (inputFeeder != null) {
+                inputFeeder.interrupt();
+            }
+        }
+    }
+
+    // Runs the program once per argument (given as its last argument), at most parallelJobs at a time. Each run's output
+    // is collected and printed once it and every run before it finished; '$?' is the number of failed runs.
+    private static void runFanOut(Terminal terminal, List<String> command, List<String> arguments, int parallelJobs, long timeoutMillis) throws InterruptedException {
+        ExecutorService jobPool = Executors.newFixedThreadPool(Math.min(parallelJobs, Math.max(1, arguments.size())), jobTask -> {
+            Thread jobThread = new Thread(jobTask, "run-job");
+            jobThread.setDaemon(true);
+            return jobThread;
+        });
+
+        try {
+            List<Future<JobResult>> results = new ArrayList<>();
+            for (String argument : arguments) {
+                List<String> jobCommand = new ArrayList<>(command);
+                jobCommand.add(argument);
+                results.add(jobPool.submit(() -> runJob(terminal, jobCommand, timeoutMillis)));
+            }
+
+            PrintStream output = terminal.getOutput();
+            List<String> failures = new ArrayList<>();
+            for (int jobIndex = 0; jobIndex < results.size(); jobIndex++) {
+                JobResult result;
+                try {
+                    result = results.get(jobIndex).get();
+                } catch (ExecutionException e) {
+                    result = new JobResult(NOT_STARTED_STATUS, String.valueOf(e.getCause()).getBytes(StandardCharsets.UTF_8));
+                }
+
+                output.write(result.output, 0, result.output.length);
+                if (terminal.isInteractive()) {
+                    output.flush();
+                }
+                if (result.status != 0) {
+                    failures.add(arguments.get(jobIndex) + " (" + (result.status == TIMED_OUT_STATUS ? "timed out" : "exit " + result.status) + ")");
+                }
+            }
+
+            if (!failures.isEmpty()) {
+                terminal.printError(failures.size() + " of " + arguments.size() + " run(s) failed: " + String.join(", ", failures));
+            }
+            terminal.setExitStatus(Math.min(failures.size(), 101));
+        } finally {
+
+            // Stops the runs still going (when this one was stopped); each stops its program.
+            jobPool.shutdownNow();
+        }
+    }
+
+    // Runs one fan-out job on a pool thread, collecting its output and errors together.
+    private static JobResult runJob(Terminal terminal, List<String> command, long timeoutMillis) throws InterruptedException {
+        ProcessBuilder builder = processBuilder(terminal, command).redirectErrorStream(true);
+        Process process;
+        try {
+            process = builder.start();
+            process.getOutputStream().close();
+        } catch (IOException e) {
+            return new JobResult(NOT_STARTED_STATUS, ("The program could not be started: " + e.getMessage() + System.lineSeparator()).getBytes(StandardCharsets.UTF_8));
+        }
+
+        ByteArrayOutputStream collectedOutput = new ByteArrayOutputStream();
+        Thread outputPump = startThread("run-job-output", () -> pump(process.getInputStream(), collectedOutput, false));
+        try {
+            boolean finished = waitFor(process, timeoutMillis);
+            outputPump.join(DRAIN_MILLIS);
+            return new JobResult(finished ? process.exitValue() : TIMED_OUT_STATUS, collectedOutput.toByteArray());
+        } catch (InterruptedException e) {
+            stop(process);
+            throw e;
+        }
+    }
+
+    // -- HELPER METHODS ---------------------
+
+    // A program named with a path runs from there; a bare name is looked up on the PATH.
+    private static ProcessBuilder processBuilder(Terminal terminal, List<String> command) {
+        Path workingDirectory = terminal.getWorkingDirectory().toPath();
+        List<String> processCommand = new ArrayList<>(command);
+
+        // Only a name with a separator is a file; a bare name is left for the system to find in PATH, so a file in the
+        // working directory can never stand in for a program of the same name.
+        String program = command.get(0);
+        Path programFile = workingDirectory.resolve(program).toAbsolutePath().normalize();
+        if (program.contains("/") || program.contains(programFile.getFileSystem().getSeparator())) {
+            processCommand.set(0, programFile.toString());
+
+            String fileName = programFile.getFileName().toString();
+            String interpreter = INTERPRETERS.get(fileName.substring(Math.max(0, fileName.lastIndexOf('.'))));
+            if (interpreter != null && Files.isRegularFile(programFile) && !Files.isExecutable(programFile)) {
+                processCommand.add(0, interpreter);
+            }
+        }
+
+        return new ProcessBuilder(processCommand).directory(workingDirectory.toFile());
+    }
+
+    // Waits for the program to exit (without a limit if timeoutMillis is 0); stops it and returns false if it runs too long.
+    private static boolean waitFor(Process process, long timeoutMillis) throws InterruptedException {
+        if (timeoutMillis == 0) {
+            process.waitFor();
+            return true;
+        }
+        if (process.waitFor(timeoutMillis, TimeUnit.MILLISECONDS)) {
+            return true;
+        }
+        stop(process);
+        return false;
+    }
+
+    // Asks the program (and whatever it started) to exit, then kills what is left after the grace period.
+    private static void stop(Process process) {
+        process.descendants().forEach(ProcessHandle::destroy);
+        process.destroy();
+        try {
+            if (process.waitFor(STOP_GRACE_MILLIS, TimeUnit.MILLISECONDS)) {
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        process.descendants().forEach(ProcessHandle::destroyForcibly);
+        process.destroyForcibly();
+    }
+
+    // Copies the bytes as they arrive; flushes after each chunk when someone is watching.
+    private static void pump(InputStream from, OutputStream to, boolean flushEachChunk) {
+        byte[] chunk = new byte[PUMP_BUFFER_BYTES];
+        try (from) {
+            for (int readBytes = from.read(chunk); readBytes != -1; readBytes = from.read(chunk)) {
+                synchronized (to) {
+                    to.write(chunk, 0, readBytes);
+                    if (flushEachChunk) {
+                        to.flush();
+                    }
+                }
+            }
+        } catch (IOException | LinePipe.BrokenPipeException e) {
+            // The program or the reader went away; nothing more to copy.
+        }
+    }
+
+    // Writes the piped lines into the program's input; stops the stage before if the program stops reading.
+    private static void feed(LinePipe pipedInput, OutputStream programInput) {
+        try (BufferedWriter inputWriter = new BufferedWriter(new OutputStreamWriter(programInput, StandardCharsets.UTF_8))) {
+            for (String line = pipedInput.take(); line != null; line = pipedInput.take()) {
+                inputWriter.write(line);
+                inputWriter.newLine();
+            }
+        } catch (IOException | InterruptedException e) {
+            pipedInput.closeReader();
+        }
+    }
+
+    private static Thread startThread(String name, Runnable task) {
+        Thread thread = new Thread(task, name);
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    // -- NESTED CLASSES ---------------------
+
+    // The exit code and the collected output of one fan-out run.
+    private static class JobResult {
+        final int status;
+        final byte[] output;
+
+        JobResult(int status, byte[] output) {
+            this.status = status;
+            this.output = output;
+        }
+    }
+
+}
@@ -0,0 +1,347 @@
+// == IMPORTS =======================
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+// == CLASS =======================
+// RESOURCE TRANSFER | Moves resources with an atomic rename when possible, otherwise by a parallel zero-copy copy then delete.
+public class ResourceTransfer {
+
+    // -- CONSTANT / UTILITY VARIABLES ------
+
+    // Copying is mostly waiting on the disks, so use more threads than cores.
+    static final ExecutorService COPY_POOL = Executors.newFixedThreadPool(Math.max(4, Runtime.getRuntime().availableProcessors() * 2), copyTask -> {
+        Thread copyThread = new Thread(copyTask, "resource-copy");
+        copyThread.setDaemon(true);
+        return copyThread;
+    });
+
+    // At most this many file copies wait in the pool at once, so huge trees do not fill the memory with tasks.
+    static final int MAX_QUEUED_COPIES = 256;
+
+    // Files this large are split into chunks that are copied in parallel; smaller ones are copied by one task.
+    static final long CHUNKED_COPY_MIN_BYTES = 64L << 20, COPY_CHUNK_BYTES = 16L << 20;
+
+    static final long PROGRESS_INTERVAL_MILLIS = 1000;
+    static final int MAX_LISTED_FAILURES = 20;
+
+    // -- OBJECT FIELDS ---------------------
+
+    private final LongAdder copiedFiles = new LongAdder(), copiedBytes = new LongAdder();
+    private final Queue<String> failures = new ConcurrentLinkedQueue<>();
+    private final Semaphore copySlots = new Semaphore(MAX_QUEUED_COPIES);
+    private final PrintStream progressOutput;
+    private volatile boolean cancelled;
+    private long startTime, lastProgressTime;
+
+    // -- CONSTRUCTOR -------------------------
+
+    public ResourceTransfer(PrintStream progressOutput) {
+        this.progressOutput = progressOutput;
+    }
+
+    // -- TRANSFER METHODS -------------------
+
+    // Moves the resource to the destination path; the source is only deleted once every file was copied and verified.
+    public Summary move(Path source, Path destination) throws IOException, InterruptedException {
+
+        startTime = System.nanoTime();
+
+        // Fast path: one atomic rename (same filesystem), no matter how big the resource is.
+        try {
+            Files.move(source, destination, StandardCopyOption.ATOMIC_MOVE);
+            return summarize(true);
+        } catch (AtomicMoveNotSupportedException e) {
+            // Different filesystems; fall back to copying.
+        }
+
+        copyTree(source, destination);
+        if (failures.isEmpty()) {
+            if (Files.isDirectory(source, LinkOption.NOFOLLOW_LINKS)) {
+                DirectoryDeleter.Summary deletion = new DirectoryDeleter().deleteTree(source, progressOutput);
+                failures.addAll(deletion.failures);
+            } else {
+                Files.delete(source);
+            }
+        } else {
+            failures.add(source + ": not deleted, because the copy was incomplete");
+        }
+        return summarize(false);
+    }
+
+    // Copies the resource (and everything inside it) to the destination path, files in parallel.
+    public Summary copy(Path source, Path destination) throws IOException, InterruptedException {
+        startTime = System.nanoTime();
+        copyTree(source, destination);
+        return summarize(false);
+    }
+
+    // Walks the source tree on this thread (making the directories) while the pool copies the files.
+    private void copyTree(Path source, Path destination) throws IOException, InterruptedException {
+
+        lastProgressTime = System.nanoTime();
+        Files.walkFileTree(source, new SimpleFileVisitor<>() {
+
+            @Override
+            public FileVisitResult preVisitDirectory(Path directory, BasicFileAttributes attributes) throws IOException {
+                Files.createDirectories(destination.resolve(source.relativize(directory).toString()));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+
+                // Stop walking if the command was killed.
+                if (Thread.currentThread().isInterrupted()) {
+                    cancelled = true;
+                    return FileVisitResult.TERMINATE;
+                }
+
+                Path target = destination.resolve(source.relativize(file).toString());
+
+                // Symbolic links are copied as links.
+                if (attributes.isSymbolicLink()) {
+                    try {
+                        Files.copy(file, target, LinkOption.NOFOLLOW_LINKS, StandardCopyOption.REPLACE_EXISTING);
+                    } catch (IOException e) {
+                        failures.add(file + ": " + e);
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                try {
+                    if (attributes.size() < CHUNKED_COPY_MIN_BYTES) {
+                        submitCopy(() -> copyFile(file, target));
+                    } else {
+                        copyFileInChunks(file, target, attributes.size());
+                    }
+                } catch (InterruptedException e) {
+                    cancelled = true;
+                    return FileVisitResult.TERMINATE;
+                }
+
+                printProgressIfDue();
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                failures.add(file + ": " + e);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        // Wait for the queued copies (all slots free means every copy is done); if the command is killed meanwhile, the
+        // queued copies are told to stop.
+        try {
+            while (!copySlots.tryAcquire(MAX_QUEUED_COPIES, PROGRESS_INTERVAL_MILLIS, TimeUnit.MILLISECONDS)) {
+                printProgressIfDue();
+            }
+        } catch (InterruptedException e) {
+            cancelled = true;
+            throw e;
+        }
+        copySlots.release(MAX_QUEUED_COPIES);
+
+        // The pool's threads run outside the command's metrics, so the copied bytes are counted here, on its thread.
+        CommandMetrics.addBytesRead(copiedBytes.sum());
+        CommandMetrics.addBytesWritten(copiedBytes.sum());
+
+        if (cancelled) {
+            throw new InterruptedException();
+        }
+    }
+
+    // Hands a copy task to the pool once one of the MAX_QUEUED_COPIES slots is free.
+    private void submitCopy(Runnable copyTask) throws InterruptedException {
+        copySlots.acquire();
+        COPY_POOL.execute(() -> {
+            try {
+                copyTask.run();
+            } finally {
+                copySlots.release();
+            }
+        });
+    }
+
+    // Copies one file with FileChannel.transferTo (the kernel copies the bytes), then verifies its size.
+    private void copyFile(Path source, Path target) {
+        if (cancelled) {
+            return;
+        }
+
+        long size;
+        try (FileChannel sourceChannel = FileChannel.open(source, StandardOpenOption.READ);
+             FileChannel targetChannel = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            size = sourceChannel.size();
+            transferRange(sourceChannel, targetChannel, 0, size);
+        } catch (IOException e) {
+            failures.add(source + ": " + e);
+            return;
+        }
+        finishCopy(source, target, size);
+    }
+
+    // Splits a large file into COPY_CHUNK_BYTES chunks, copied in parallel by the pool (each through channels of its
+    // own, writing at its own position in the target); the last chunk to finish verifies the file.
+    private void copyFileInChunks(Path source, Path target, long size) throws InterruptedException {
+        try {
+            FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE).close();
+        } catch (IOException e) {
+            failures.add(source + ": " + e);
+            return;
+        }
+
+        ChunkedCopy chunkedCopy = new ChunkedCopy(source, target, size, (int) ((size + COPY_CHUNK_BYTES - 1) / COPY_CHUNK_BYTES));
+        for (long chunkStart = 0; chunkStart < size; chunkStart += COPY_CHUNK_BYTES) {
+            long start = chunkStart, end = Math.min(chunkStart + COPY_CHUNK_BYTES, size);
+            submitCopy(() -> copyChunk(chunkedCopy, start, end));
+        }
+    }
+
+    // Runs on the pool: copies the bytes from start to end of a chunked file (unless the copy already failed).
+    private void copyChunk(ChunkedCopy chunkedCopy, long start, long end) {
+        if (!cancelled && !chunkedCopy.failed.get()) {
+            try (FileChannel sourceChannel = FileChannel.open(chunkedCopy.source, StandardOpenOption.READ);
+                 FileChannel targetChannel = FileChannel.open(chunkedCopy.target, StandardOpenOption.WRITE)) {
+                targetChannel.position(start);
+                transferRange(sourceChannel, targetChannel, start, end);
+            } catch (IOException e) {
+                if (chunkedCopy.failed.compareAndSet(false, true)) {
+                    failures.add(chunkedCopy.source + ": " + e);
+                }
+            }
+        }
+
+        if (chunkedCopy.remainingChunks.decrementAndGet() == 0 && !cancelled && !chunkedCopy.failed.get()) {
+            finishCopy(chunkedCopy.source, chunkedCopy.target, chunkedCopy.size);
+        }
+    }
+
+    // Transfers the source's bytes from start to end into the target (at the target's position).
+    private void transferRange(FileChannel sourceChannel, FileChannel targetChannel, long start, long end) throws IOException {
+        long position = start;
+        while (position < end) {
+            long transferred = sourceChannel.transferTo(position, end - position, targetChannel);
+            if (transferred <= 0) {
+                break;
+            }
+            position += transferred;
+            copiedBytes.add(transferred);
+        }
+    }
+
+    // Verifies a copied file (it must be exactly as long as the source was) and gives it the source's timestamp.
+    private void finishCopy(Path source, Path target, long size) {
+        try {
+            long copiedSize = Files.size(target);
+            if (copiedSize != size) {
+                failures.add(source + ": copied " + copiedSize + " of " + size + " bytes");
+                return;
+            }
+        } catch (IOException e) {
+            failures.add(source + ": " + e);
+            return;
+        }
+
+        try {
+            Files.setLastModifiedTime(target, Files.getLastModifiedTime(source));
+        } catch (IOException e) {
+            // The content is there; a missing timestamp is not worth failing over.
+        }
+        copiedFiles.increment();
+    }
+
+    // Prints the copy progress, at most once per interval.
+    private synchronized void printProgressIfDue() {
+        long now = System.nanoTime();
+        if (now - lastProgressTime < TimeUnit.MILLISECONDS.toNanos(PROGRESS_INTERVAL_MILLIS)) {
+            return;
+        }
+        lastProgressTime = now;
+
+        double seconds = (now - startTime) / 1e9;
+        progressOutput.printf("Copying... %,d files, %.1f MB so far (%.1f MB/s)%n",
+                copiedFiles.sum(), copiedBytes.sum() / 1e6, copiedBytes.sum() / 1e6 / seconds);
+        progressOutput.flush();
+    }
+
+    private Summary summarize(boolean renamed) {
+        return new Summary(renamed, copiedFiles.sum(), copiedBytes.sum(), System.nanoTime() - startTime, new ArrayList<>(failures));
+    }
+
+    // -- NESTED CLASSES ---------------------
+
+    // A large file being copied in chunks; counts the chunks still to finish and remembers whether any of them failed.
+    private static class ChunkedCopy {
+
+        final Path source, target;
+        final long size;
+        final AtomicInteger remainingChunks;
+        final AtomicBoolean failed = new AtomicBoolean();
+
+        ChunkedCopy(Path source, Path target, long size, int chunkCount) {
+            this.source = source;
+            this.target = target;
+            this.size = size;
+            this.remainingChunks = new AtomicInteger(chunkCount);
+        }
+    }
+
+    // What a transfer did: whether it was a plain rename, how much was copied, and what failed.
+    public static class Summary {
+
+        final boolean renamed;
+        final long copiedFiles, copiedBytes, elapsedNanos;
+        final List<String> failures;
+
+        Summary(boolean renamed, long copiedFiles, long copiedBytes, long elapsedNanos, List<String> failures) {
+            this.renamed = renamed;
+            this.copiedFiles = copiedFiles;
+            this.copiedBytes = copiedBytes;
+            this.elapsedNanos = elapsedNanos;
+            this.failures = failures;
+        }
+
+        // Prints the amount copied and the throughput (nothing for a rename), then the failures as errors.
+        void print(Terminal terminal, String action) {
+            if (!renamed) {
+                double seconds = Math.max(elapsedNanos / 1e9, 1e-9);
+                terminal.getOutput().printf("%s %,d files (%.1f MB) in %.2fs (%.1f MB/s, %,.0f files/s).%n",
+                        action, copiedFiles, copiedBytes / 1e6, seconds, copiedBytes / 1e6 / seconds, copiedFiles / seconds);
+            }
+
+            if (!failures.isEmpty()) {
+                terminal.printError(failures.size() + " problem(s) occurred:");
+                for (int failureIndex = 0; failureIndex < Math.min(failures.size(), MAX_LISTED_FAILURES); failureIndex++) {
+                    terminal.getOutput().println("  " + failures.get(failureIndex));
+                }
+                if (failures.size() > MAX_LISTED_FAILURES) {
+                    terminal.getOutput().println("  ... and " + (failures.size() - MAX_LISTED_FAILURES) + " more.");
+                }
+            }
+        }
+    }
+
+}
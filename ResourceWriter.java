@@ -0,0 +1,223 @@
+// == IMPORTS =======================
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.util.ArrayList;
+import java.util.List;
+
+// == CLASS =======================
+// RESOURCE WRITER | Writes text into files: a replaced file is swapped in whole by a rename, appended text goes to its end.
+//
+// Replacing writes into a temporary file next to the target, then renames it over the target, so readers (and a crash)
+// only ever see the old or the new file, never half of one. Appending cannot work that way without copying the file,
+// so it writes in place. With --sync the bytes are forced to the disk before 'write' reports success; a long stream of
+// lines is forced in groups (at most once a second) rather than line by line.
+public class ResourceWriter implements AutoCloseable {
+
+    // -- CONSTANT / UTILITY VARIABLES ------
+
+    static final int BUFFER_BYTES = 1 << 20;
+    static final long SYNC_INTERVAL_MILLIS = 1000;
+
+    // Typing lines into 'write --stdin' ends at a line with only this on it.
+    static final String END_OF_INPUT = ".";
+
+    // -- OBJECT FIELDS ---------------------
+
+    private final FileChannel channel;
+    private final boolean sync;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private long writtenBytes, lastSyncTime = System.currentTimeMillis();
+
+    // -- CONSTRUCTOR -------------------------
+
+    private ResourceWriter(FileChannel channel, boolean sync) {
+        this.channel = channel;
+        this.sync = sync;
+    }
+
+    // -- COMMAND REGISTRATION ----------------
+
+    static void registerCommands(CommandRegistry registry) {
+        registry.register(Command.of("write", 1, true, false,
+                "[ write (file_name + text, --stdin + none, --append, --sync) | Replaces the file's text with the given text (or the piped or typed lines with --stdin; typing ends with a '.' line); --append adds to the end instead, --sync waits until it is on the disk. ]",
+                ResourceWriter::write));
+    }
+
+    // -- COMMAND METHODS --------------------
+
+    private static void write(Terminal terminal, String[] tokenizedCommand) throws IOException, InterruptedException {
+        Path file = terminal.getWorkingDirectory().toPath().resolve(tokenizedCommand[1]).toAbsolutePath().normalize();
+
+        boolean append = false, sync = false, fromInput = false;
+        List<String> words = new ArrayList<>();
+        for (int tokenIndex = 2; tokenIndex < tokenizedCommand.length; tokenIndex++) {
+            switch (tokenizedCommand[tokenIndex]) {
+                case "--append":
+                    append = true;
+                    break;
+                case "--sync":
+                    sync = true;
+                    break;
+                case "--stdin":
+                    fromInput = true;
+                    break;
+                default:
+                    words.add(tokenizedCommand[tokenIndex]);
+            }
+        }
+        if (fromInput && !words.isEmpty()) {
+            throw new IndexOutOfBoundsException();
+        }
+
+        // Writing to a link writes the file it points to; the link itself stays as it is.
+        if (Files.isSymbolicLink(file)) {
+            if (!Files.exists(file)) {
+                terminal.printError("The link points to a file that does not exist; cannot write through it.");
+                return;
+            }
+            file = file.toRealPath();
+        }
+
+        if (Files.isDirectory(file)) {
+            terminal.printError("A directory by that name already exists; cannot write into it.");
+            return;
+        }
+        if (!Files.isDirectory(file.getParent())) {
+            terminal.printError("The directory to write the file into does not exist.");
+            return;
+        }
+
+        long writtenBytes = append ? appendTo(terminal, file, words, fromInput, sync) : replace(terminal, file, words, fromInput, sync);
+        DirectoryCache.invalidate(file.getParent());
+        terminal.getOutput().println((append ? "Appended " : "Wrote ") + DiskUsage.formatBytes(writtenBytes) + " to " + file.getFileName() + (sync ? " (synced to disk)." : "."));
+    }
+
+    // Writes the text into a temporary file, then renames it over the file (keeping the old file's permissions; a new
+    // file gets the usual ones for the user).
+    private static long replace(Terminal terminal, Path file, List<String> words, boolean fromInput, boolean sync) throws IOException, InterruptedException {
+        Path temporaryFile = Files.createFile(file.resolveSibling("." + file.getFileName() + "." + ProcessHandle.current().pid() + "-" + System.nanoTime() + ".tmp"));
+        try {
+            copyPermissions(file, temporaryFile);
+
+            long writtenBytes;
+            try (ResourceWriter writer = new ResourceWriter(FileChannel.open(temporaryFile, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING), sync)) {
+                writer.writeText(terminal, words, fromInput);
+                writtenBytes = writer.writtenBytes;
+            }
+
+            Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            if (sync) {
+                syncDirectory(file.getParent());
+            }
+            return writtenBytes;
+        } finally {
+            Files.deleteIfExists(temporaryFile);
+        }
+    }
+
+    private static long appendTo(Terminal terminal, Path file, List<String> words, boolean fromInput, boolean sync) throws IOException, InterruptedException {
+        boolean existed = Files.exists(file);
+        try (ResourceWriter writer = new ResourceWriter(FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND), sync)) {
+            writer.writeText(terminal, words, fromInput);
+            if (sync && !existed) {
+                syncDirectory(file.getParent());
+            }
+            return writer.writtenBytes;
+        }
+    }
+
+    // -- WRITING METHODS --------------------
+
+    // Writes the words as one line, or every line from the input: the pipe when there is one, otherwise what is typed.
+    private void writeText(Terminal terminal, List<String> words, boolean fromInput) throws IOException, InterruptedException {
+        if (!fromInput) {
+            if (!words.isEmpty()) {
+                writeLine(String.join(" ", words));
+            }
+        } else if (terminal.getPipedInput() != null) {
+            LinePipe pipedInput = terminal.getPipedInput();
+            for (String line = pipedInput.take(); line != null; line = pipedInput.take()) {
+                writeLine(line);
+            }
+        } else {
+            for (String line = terminal.readInputLine(); line != null && !line.equals(END_OF_INPUT); line = terminal.readInputLine()) {
+                writeLine(line);
+            }
+        }
+        flush();
+        if (sync) {
+            channel.force(true);
+        }
+    }
+
+    // Encodes the line straight into the buffer; a full buffer is written out (and, with --sync, forced once a second).
+    private void writeLine(String line) throws IOException {
+        CharBuffer characters = CharBuffer.wrap(line + System.lineSeparator());
+        while (true) {
+            CoderResult result = encoder.encode(characters, buffer, true);
+            if (!result.isOverflow()) {
+                break;
+            }
+            flush();
+
+            long now = System.currentTimeMillis();
+            if (sync && now - lastSyncTime >= SYNC_INTERVAL_MILLIS) {
+                channel.force(false);
+                lastSyncTime = now;
+            }
+        }
+        encoder.reset();
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        int bufferedBytes = buffer.remaining();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+        writtenBytes += bufferedBytes;
+        CommandMetrics.addBytesWritten(bufferedBytes);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    // -- HELPER METHODS ---------------------
+
+    // A new file gets the permissions of the file it replaces (when the filesystem has Posix permissions).
+    private static void copyPermissions(Path from, Path to) throws IOException {
+        PosixFileAttributeView fromView = Files.getFileAttributeView(from, PosixFileAttributeView.class);
+        if (fromView == null || !Files.exists(from)) {
+            return;
+        }
+        Files.setPosixFilePermissions(to, fromView.readAttributes().permissions());
+    }
+
+    // Forces the directory entry (the rename or the new name) to the disk; not every system can open a directory for that.
+    private static void syncDirectory(Path directory) {
+        try (FileChannel directoryChannel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            directoryChannel.force(true);
+        } catch (IOException e) {
+            // The file's own bytes are on the disk; only its name may still be in the system's cache.
+        }
+    }
+
+}
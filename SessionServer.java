@@ -0,0 +1,180 @@
+// == IMPORTS =======================
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.HexFormat;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// == CLASS =======================
+// SESSION SERVER | Lets many people use one pseudobash host at once; every connection gets a session of its own.
+//
+// A session reads its commands from the connection and prints into it, so it has its own working directory, history
+// and resource safety, just like a terminal window. Sessions block on their connection while the person thinks, so
+// each one runs on its own thread (with a small stack, since thousands of them may be open).
+//
+// The server only listens on this machine (loopback) unless told otherwise, and a connection must send the server's
+// token as its first line before it gets a session. Remote sessions cannot turn resource safety off, so nothing they
+// run can change, delete or write resources, or start programs.
+public class SessionServer implements AutoCloseable {
+
+    // -- CONSTANT / UTILITY VARIABLES ------
+
+    static final int MAX_SESSIONS = 4096;
+    static final int CONNECTION_BACKLOG = 1024;
+    static final long SESSION_STACK_BYTES = 512 * 1024;
+    static final int OUTPUT_BUFFER_BYTES = 8192;
+
+    // A connection has this long to send the token before it is dropped.
+    static final int TOKEN_TIMEOUT_MILLIS = 10_000;
+    static final int GENERATED_TOKEN_BYTES = 16;
+
+    // -- OBJECT FIELDS ---------------------
+
+    private final ServerSocket serverSocket;
+    private final byte[] token;
+    private final PrintStream log;
+    private final AtomicInteger activeSessions = new AtomicInteger();
+    private final AtomicLong sessionNumbers = new AtomicLong();
+
+    // -- CONSTRUCTOR -------------------------
+
+    // Listens on the port (0 picks a free one) of the address (null for loopback only); a connection must send the
+    // token as its first line. Connections are logged into log (null for none).
+    public SessionServer(InetAddress address, int port, String token, PrintStream log) throws IOException {
+        if (token == null || token.isEmpty()) {
+            throw new IllegalArgumentException("the session token cannot be empty");
+        }
+        this.serverSocket = new ServerSocket();
+        this.serverSocket.bind(new InetSocketAddress(address != null ? address : InetAddress.getLoopbackAddress(), port), CONNECTION_BACKLOG);
+        this.token = token.getBytes(StandardCharsets.UTF_8);
+        this.log = log;
+    }
+
+    // Returns a random token (hexadecimal) for a server whose operator did not choose one.
+    public static String generateToken() {
+        byte[] tokenBytes = new byte[GENERATED_TOKEN_BYTES];
+        new SecureRandom().nextBytes(tokenBytes);
+        return HexFormat.of().formatHex(tokenBytes);
+    }
+
+    // -- SERVER METHODS ----------------------
+
+    // Accepts connections until the server is closed.
+    public void serve() throws IOException {
+        logMessage("Serving pseudobash sessions on " + serverSocket.getInetAddress().getHostAddress() + ", port " + getPort() + ".");
+        while (!serverSocket.isClosed()) {
+            Socket connection;
+            try {
+                connection = serverSocket.accept();
+            } catch (SocketException e) {
+
+                // Closed while waiting.
+                return;
+            }
+
+            if (activeSessions.incrementAndGet() > MAX_SESSIONS) {
+                activeSessions.decrementAndGet();
+                refuse(connection);
+                continue;
+            }
+
+            long sessionNumber = sessionNumbers.incrementAndGet();
+            Thread sessionThread = new Thread(null, () -> runSession(connection, sessionNumber), "session-" + sessionNumber, SESSION_STACK_BYTES);
+            sessionThread.setDaemon(true);
+            sessionThread.start();
+        }
+    }
+
+    // Returns the port the server listens on.
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    // Returns how many sessions are open.
+    public int getActiveSessions() {
+        return activeSessions.get();
+    }
+
+    // Stops accepting connections; open sessions go on until their people leave.
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+    }
+
+    // -- HELPER METHODS ---------------------
+
+    // Runs on the session's thread: once the connection has sent the token, the session reads from and prints into it
+    // until either side ends it.
+    private void runSession(Socket connection, long sessionNumber) {
+        String remoteAddress = String.valueOf(connection.getRemoteSocketAddress());
+        boolean opened = false;
+
+        try (connection) {
+            connection.setTcpNoDelay(true);
+            BufferedReader input = new BufferedReader(new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8));
+            PrintStream output = new PrintStream(new BufferedOutputStream(connection.getOutputStream(), OUTPUT_BUFFER_BYTES), false, StandardCharsets.UTF_8);
+
+            if (!receivedToken(connection, input)) {
+                output.println("Wrong session token.");
+                output.flush();
+                logMessage("Refused a connection from " + remoteAddress + ": wrong session token.");
+                return;
+            }
+
+            opened = true;
+            logMessage("Session " + sessionNumber + " opened by " + remoteAddress + " (" + activeSessions.get() + " open).");
+            Terminal.launchRemoteSession(input, output);
+        } catch (IOException e) {
+            // The connection broke; the session just ends.
+        } finally {
+            activeSessions.decrementAndGet();
+            if (opened) {
+                logMessage("Session " + sessionNumber + " closed (" + activeSessions.get() + " open).");
+            }
+        }
+    }
+
+    // Reads the first line of the connection (waiting at most TOKEN_TIMEOUT_MILLIS) and compares it with the token.
+    private boolean receivedToken(Socket connection, BufferedReader input) throws IOException {
+        String sentToken;
+        try {
+            connection.setSoTimeout(TOKEN_TIMEOUT_MILLIS);
+            sentToken = input.readLine();
+            connection.setSoTimeout(0);
+        } catch (SocketTimeoutException e) {
+            return false;
+        }
+
+        // Compared in constant time, so the reply's timing says nothing about how much of the token was right.
+        return sentToken != null && MessageDigest.isEqual(sentToken.getBytes(StandardCharsets.UTF_8), token);
+    }
+
+    private void refuse(Socket connection) {
+        try (connection) {
+            connection.getOutputStream().write(("The server is full (" + MAX_SESSIONS + " sessions); try again later.\n").getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            // Nothing more to tell them.
+        }
+        logMessage("Refused a connection from " + connection.getRemoteSocketAddress() + ": the server is full.");
+    }
+
+    private void logMessage(String message) {
+        if (log != null) {
+            log.println(message);
+        }
+    }
+
+}
@@ -1,13 +1,28 @@
 // == IMPORTS =======================
 
-import javax.sound.sampled.*;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileDescriptor;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Scanner;
 
 // == CLASS =======================
 // TERMINAL | Deals with the command input, processing, and execution.
@@ -17,27 +32,120 @@ public class Terminal {
 
     static final String FILE_SEPARATOR = File.separator; // test this on another os
     static final int FILE = 0, DIRECTORY = 1;
-    static final Map<String, String> COMMAND_DICTIONARY = initializeCommandDictionary("DEFAULT");
-    static final Map<String, String> SECRET_COMMAND_DICTIONARY = initializeCommandDictionary("SECRET");
+    static final CommandRegistry COMMANDS = initializeCommandRegistry();
+    static final DateTimeFormatter LISTING_DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
     static final Map<String, String> COLOR_CODES = Map.of("RESET", "\u001B[0m",
             "ERROR", "\u001B[31m",
             "FILE", "\u001B[35m",
             "DIRECTORY", "\u001B[36m",
+            "HIDDEN-FILE", "\u001B[90m",
             "REQUEST-LINE", "\u001B[32m");
 
     // -- OBJECT FIELDS ---------------------
 
     private String username = "user", hostname = "pseudobash";
     private File workingDirectory = new File(System.getProperty("user.dir"));
-    private ArrayList<String> log = new ArrayList<>();
-    private Scanner input = new Scanner(System.in);
+    private final CommandHistory history;
+    private final LineEditor lineEditor;
+    private int executedCommands, failedCommands;
+    private final BufferedReader input;
+    private final PrintStream output, errorOutput;
+    private final LinePipe pipedInput;
+    private final boolean interactive, console;
+    private boolean remote;
     private boolean resourceSafety = true;
-    private Clip audioPlayer;
+    private boolean commandFailed;
+    private int exitStatus;
+    private boolean running = true;
+    private final CommandLexer lexer = new CommandLexer(this::resolveVariable);
+    private final JobScheduler jobs;
+
+    // -- CONSTRUCTOR -------------------------
+
+    private Terminal(BufferedReader input, PrintStream output, boolean interactive, boolean console) {
+        this.input = input;
+        this.output = output;
+        this.errorOutput = output;
+        this.pipedInput = null;
+        this.interactive = interactive;
+        this.console = console;
+
+        // Only the session typed into this machine's terminal keeps its history between runs and edits lines in place.
+        this.history = console ? CommandHistory.open(CommandHistory.DEFAULT_HISTORY_FILE) : new CommandHistory(null);
+        this.lineEditor = console ? LineEditor.create(this, input, output, history) : null;
+        this.jobs = new JobScheduler();
+    }
+
+    // Copies a session (for a pipeline stage or a background job) that prints into the given streams.
+    private Terminal(Terminal session, LinePipe pipedInput, PrintStream output, PrintStream errorOutput) {
+        this.input = session.input;
+        this.output = output;
+        this.errorOutput = errorOutput;
+        this.pipedInput = pipedInput;
+        this.interactive = false;
+        this.console = false;
+        this.username = session.username;
+        this.hostname = session.hostname;
+        this.workingDirectory = session.workingDirectory;
+        this.history = session.history;
+        this.lineEditor = null;
+        this.resourceSafety = session.resourceSafety;
+        this.remote = session.remote;
+
+        // Every copy of a session shares its jobs, so 'jobs', 'fg', 'wait' and 'kill' work inside a pipeline too.
+        this.jobs = session.jobs;
+    }
 
     // -- "CONSTRUCTOR" (DEFAULT) ------------
 
     public static void launchTerminal() {
-        new Terminal().startProcesses();
+        new Terminal(new BufferedReader(new InputStreamReader(System.in)), System.out, true, true).startProcesses();
+    }
+
+    // -- "CONSTRUCTOR" (NETWORK) ------------
+
+    // Runs a session for someone connected over the network: it prompts like the terminal window, but has its own
+    // working directory and (in-memory) history, and its resource safety stays on.
+    public static void launchRemoteSession(BufferedReader input, PrintStream output) {
+        Terminal terminal = new Terminal(input, output, true, false);
+        terminal.remote = true;
+        terminal.startProcesses();
+        output.flush();
+    }
+
+    // -- "CONSTRUCTOR" (EMBEDDED) -----------
+
+    // Runs every command of the script in a quiet session that starts in the given directory and prints into the given
+    // stream (ex. for the benchmarks); returns how many of the commands failed.
+    static int runEmbedded(Reader script, PrintStream output, File workingDirectory, boolean resourceSafety) {
+        Terminal terminal = new Terminal(new BufferedReader(script, 1 << 16), output, false, false);
+        terminal.workingDirectory = workingDirectory;
+        terminal.resourceSafety = resourceSafety;
+        terminal.startProcesses();
+        output.flush();
+        return terminal.failedCommands;
+    }
+
+    // -- "CONSTRUCTOR" (BATCH) --------------
+
+    // Runs every command of a script without prompts; returns the exit status (0 if no command failed).
+    public static int launchBatch(Reader script, String scriptName) {
+
+        // Output goes through one large buffer which is only flushed once the batch is done.
+        PrintStream batchOutput = new PrintStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), 1 << 16), false);
+        Terminal terminal = new Terminal(new BufferedReader(script, 1 << 16), batchOutput, false, false);
+
+        // Run the script and time it.
+        long startTime = System.nanoTime();
+        terminal.startProcesses();
+        long elapsedTime = System.nanoTime() - startTime;
+        batchOutput.flush();
+
+        // Report the exit status and timing (on stderr, so it does not mix with the script output).
+        int exitStatus = (terminal.failedCommands == 0) ? 0 : 1;
+        System.err.printf("[%s] %d command(s) | %d failed | %.2f ms | exit status %d%n",
+                scriptName, terminal.executedCommands, terminal.failedCommands, elapsedTime / 1_000_000.0, exitStatus);
+        return exitStatus;
     }
 
     // -- TERMINAL LAUNCHER ------------------
@@ -48,370 +156,619 @@ public class Terminal {
         username = System.getProperty("user.name");
 
         // Start main processing loop.
-        while (true) {
+        while (running) {
 
             // =====================================================
             // -- PRE-PROCESSING BEGINS ----------------------------
             // =====================================================
 
-            // Print the input field.
-            System.out.print(COLOR_CODES.get("REQUEST-LINE") + username + "@" + hostname + ":~" + workingDirectory.toString() + "$ " + COLOR_CODES.get("RESET"));
+            // Tell the user about background jobs that have finished.
+            jobs.reportFinishedJobs(output);
 
-            // Gather and tokenize the entered command.
-            String command = input.nextLine();
-            String[] tokenizedCommand = command.split(" "); // error is thrown here if input is just spaces.
+            // Gather the entered command (after the input field, when a person is typing); stop once the input has run out.
+            String prompt = COLOR_CODES.get("REQUEST-LINE") + username + "@" + hostname + ":~" + workingDirectory.toString() + "$ " + COLOR_CODES.get("RESET");
+            String command;
+            try {
+                if (lineEditor != null) {
+                    command = lineEditor.readLine(prompt);
+                } else {
+                    if (interactive) {
+                        output.print(prompt);
+                        output.flush();
+                    }
+                    command = input.readLine();
+                }
+            } catch (IOException e) {
+                command = null;
+            }
+            if (command == null) {
+                break;
+            }
 
-            // Set the command itself to lowercase such that it can be recognized if there's an uppercase mistake.
-            tokenizedCommand[0] = tokenizedCommand[0].toLowerCase();
+            // Recall a command from the history ('!!' is the last one, '!n' is number n).
+            String[][] stages = null;
+            String recalledCommand = command.startsWith("!") ? recallCommand(command) : command;
+
+            // Tokenize the entered command into its pipeline stages (handles quotes, escapes and $VARIABLES).
+            if (recalledCommand != null) {
+                command = recalledCommand;
+                try {
+                    stages = lexer.tokenizeStages(command);
+                } catch (IllegalArgumentException e) {
+                    printError(e.getMessage());
+                }
+            }
+
+            // Blank lines are ignored.
+            if (stages != null && stages.length == 0) {
+                continue;
+            }
 
             // =====================================================
             // -- PRE-PROCESSING ENDS | PROCESSING BEGINS ----------
             // =====================================================
 
-            // Use try to catch various types of errors.
-            try {
+            // Commands ending with '&' run in the background; the rest run right away.
+            if (stages != null && lexer.isBackground()) {
+                commandFailed = false;
+                exitStatus = 0;
+                output.println("[" + jobs.launch(this, stages, command) + "] started");
+            } else if (stages != null) {
+                runStages(stages);
+            }
 
-                // Identify the command itself.
-                switch (tokenizedCommand[0]) {
+            // Keep count of the executed (and failed) commands.
+            executedCommands++;
+            if (commandFailed) {
+                failedCommands++;
+            }
 
-                    // Empty case; do nothing.
-                    case "":
-                        break;
+            // Saves the command into the log (a failed recall is not worth keeping).
+            if (recalledCommand != null) {
+                logCommand(command);
+            }
 
+        }
+
+        // Make sure the history file has every command of this session.
+        history.close();
+    }
 
-                    // ====================================
-                    // -- ASSISTANCE COMMANDS -------------
-                    // ====================================
+    // Replaces a leading '!!' or '!n' with that command from the history (and prints the result); null if there is no such command.
+    private String recallCommand(String command) {
+        int referenceEnd = 1;
+        long number;
+        if (command.startsWith("!!")) {
+            referenceEnd = 2;
+            number = history.newestNumber();
+        } else {
+            while (referenceEnd < command.length() && Character.isDigit(command.charAt(referenceEnd))) {
+                referenceEnd++;
+            }
+            if (referenceEnd == 1) {
+                return command;
+            }
+            number = Long.parseLong(command.substring(1, referenceEnd));
+        }
 
+        String recalledCommand = history.get(number);
+        if (recalledCommand == null) {
+            printError("No such command in the history. Use 'log' to see the command numbers.");
+            return null;
+        }
 
-                    // [ help (none) | Prints all available commands. ]
-                    case "help":
+        recalledCommand += command.substring(referenceEnd);
+        output.println(recalledCommand);
+        return recalledCommand;
+    }
 
-                        // Print a helpful message.
-                        System.out.println("* use 'explain (command_name)' to get a description of the command *");
+    // Runs a tokenized command line: a single command right here, a pipeline with each of its stages running concurrently.
+    void runStages(String[][] stages) {
 
-                        // Get a String[] of every command name.
-                        String[] commandNames = COMMAND_DICTIONARY.keySet().toArray(new String[0]);
+        // Set the commands themselves to lowercase such that they can be recognized if there's an uppercase mistake.
+        for (String[] tokenizedCommand : stages) {
+            tokenizedCommand[0] = tokenizedCommand[0].toLowerCase();
+        }
 
-                        // Print a formatted list of all the command names.
-                        for (int commandIndex = 0; commandIndex < COMMAND_DICTIONARY.size(); commandIndex++) {
+        if (stages.length == 1) {
+            executeCommand(stages[0]);
+        } else {
+            exitStatus = 0;
+            commandFailed = Pipeline.run(this, stages);
+        }
+    }
 
-                            // Prints the name of a command.
-                            System.out.print(commandNames[commandIndex] + " ".repeat(23 - commandNames[commandIndex].length()));
+    // Looks up the tokenized command in the registry and runs it.
+    void executeCommand(String[] tokenizedCommand) {
 
-                            // Makes a new line every 3 names.
-                            if (commandIndex != (commandNames.length - 1) && (commandIndex + 1) % 3 == 0) {
-                                System.out.println();
-                            }
-                        }
-                        System.out.println();
-                        break;
+        // Use try to catch various types of errors (the exception that ended the command is kept for the statistics).
+        commandFailed = false;
+        exitStatus = 0;
+        CommandMetrics.Invocation invocation = null;
+        Exception failure = null;
+        try {
 
-                    // [ explain (function_name, all) | Explains the given command. ]
-                    case "explain":
-
-                        // This allows all the command explanations to be printed at once.
-                        if (tokenizedCommand[1].equals("all")) {
-                            for (String commandExplanation : COMMAND_DICTIONARY.values()) {
-                                System.out.println(commandExplanation);
-                            }
-                        } else {
-
-                            // Check that the command requested actually exists.
-                            if (COMMAND_DICTIONARY.containsKey(tokenizedCommand[1])) { // or use containsKey()
-                                System.out.println(COMMAND_DICTIONARY.get(tokenizedCommand[1]));
-                            }
-                            else if (SECRET_COMMAND_DICTIONARY.containsKey(tokenizedCommand[1])) {
-                                System.out.println(SECRET_COMMAND_DICTIONARY.get(tokenizedCommand[1]));
-                            }
-
-                            // Print a message if the command requested doesn't exist.
-                            else {
-                                System.out.println("The command you want explained does not exist.");
-                            }
-                        }
-
-                        break;
-
-                    // [ secrets (none) | Prints a list of secret commands. ]
-                    case "secrets":
-                        // TODO ADD SECRETS
-                        // Print a helpful message.
-                        System.out.println("* use 'explain (command_name)' to get a description of the command *");
-
-                        // Get a String[] of every command name.
-                        String[] secretCommandNames = SECRET_COMMAND_DICTIONARY.keySet().toArray(new String[0]);
-
-                        // Print a formatted list of all the command names.
-                        for (int commandIndex = 0; commandIndex < SECRET_COMMAND_DICTIONARY.size(); commandIndex++) {
-
-                            // Prints the name of a command.
-                            System.out.print(secretCommandNames[commandIndex] + " ".repeat(23 - secretCommandNames[commandIndex].length()));
-
-                            // Makes a new line every 3 names.
-                            if (commandIndex != (secretCommandNames.length - 1) && (commandIndex + 1) % 3 == 0) {
-                                System.out.println();
-                            }
-                        }
-                        System.out.println();
-                        break;
-
-                    // ====================================
-                    // -- NAVIGATION COMMANDS -------------
-                    // ====================================
-
-
-                    // [ whereami (none) | Prints the current working directory. ]
-                    case "whereami":
-                        System.out.println(workingDirectory);
-                        break;
-
-                    // [ go (directory_name, up) | Will switch the working directory. ]
-                    case "go":
-                        switchDirectory(tokenizedCommand[1]); // FINISH
-                        break;
-
-                    // [ lookhere (none, directory_name) | Will print the contents of the given directory. ]
-                    case "lookhere":
-
-                        // Check if the command is 'stand-alone' --> Show the contents of the working directory.
-                        if (tokenizedCommand.length == 1) {
-                            printDirectoryContents(getDirectoryContents(workingDirectory.toString()));
-                        }
-
-                        // If there is a specific path that is given (* from the working directory *), there look in there.
-                        else {
-
-                            // Check that the requested directory exists.
-                            if (resourceExists(workingDirectory.toString() + FILE_SEPARATOR + tokenizedCommand[1], DIRECTORY)) {
-                                printDirectoryContents(getDirectoryContents(workingDirectory.toString() + FILE_SEPARATOR + tokenizedCommand[1]));
-                            }
-
-                            // Print message if doesn't exist.
-                            else {
-                                System.out.println("No such directory exists.");
-                            }
-                        }
-                        break;
-
-                    // [ exit (none) | Closes the program. ]
-                    case "exit":
-                        return; // Just quits the while loop.
-
-
-                    // ====================================
-                    // -- FILE MANAGEMENT COMMANDS --------
-                    // ====================================
-
-                    case "safety":
-                        if (tokenizedCommand[1].equalsIgnoreCase("status")) {
-                            System.out.print("Resource safety is currently ");
-                            if (resourceSafety) {
-                                System.out.println("ON.");
-                            } else {
-                                System.out.println("OFF.");
-                            }
-                        } else if (tokenizedCommand[1].equalsIgnoreCase("toggle")) {
-                            toggleSafety();
-                            System.out.print("Resource safety is now ");
-                            if (resourceSafety) {
-                                System.out.println("ON.");
-                            } else {
-                                System.out.println("OFF.");
-                            }
-                        } else {
-                            // bum thing to do, might just ignore idk
-                            System.out.println(COLOR_CODES.get("ERROR") + "Invalid argument(s). Use 'explain (command)' to see the valid argument(s). " + COLOR_CODES.get("RESET"));
-                        }
-                        break;
-
-                    case "read":
-                        readFile(tokenizedCommand[1]);
-                        break;
-
-                    case "make":
-                        makeResource(tokenizedCommand[1], tokenizedCommand[2]);
-                        break;
-
-                    case "delete":
-                        deleteResource(tokenizedCommand[1], tokenizedCommand[2]);
-                        break;
-
-                    case "play":
-                        playAudioFile(tokenizedCommand[1]);
-                        break;
-
-                    case "stop":
-                        stopPlayingAudio();
-                        break;
-
-                    case "move":
-                        moveResource(tokenizedCommand[1], tokenizedCommand[2], tokenizedCommand[3]);
-                        break;
-
-                    // ====================================
-                    // -- USER DIAGNOSTICS COMMANDS -------
-                    // ====================================
-
-
-                    // [ whoami (none) | Prints username. ]
-                    case "whoami":
-                        System.out.println(username);
-                        break;
-
-                    // [ whoishost (none) Prints hostname. ]
-                    case "whoishost":
-                        System.out.println(hostname);
-                        break;
-
-
-                    // ====================================
-                    // -- MISCILLANIOUS COMMANDS ----------
-                    // ====================================
-
-
-                    // [ clear (none) | Prints many newlines on text-UI; clears the text on graphics-UI. ]
-                    case "clear":
-                        clearScreen();
-                        break;
-
-                    // [ log (none) | Prints an order of commands used in the session. ]
-                    case "log":
-
-                        // Prints a formatted list of the commands used.
-                        for (int commandIndex = 0; commandIndex < log.size(); commandIndex++) {
-                            System.out.println((commandIndex + 1) + " ".repeat((Integer.toString((log.size()))).length() - (Integer.toString(commandIndex + 1)).length()) + " | " + log.get(commandIndex));
-                        }
-
-                        break;
-
-                    // [ print (text) | Prints the given text on the terminal. ]
-                    case "print":
-
-                        // Goes through each word/phrase inputted after the 'print' command.
-                        for (int possibleTerm = 1; possibleTerm < tokenizedCommand.length; possibleTerm++) {
-                            System.out.print(tokenizedCommand[possibleTerm] + " ");
-                        }
-
-                        System.out.println();
-                        break;
-
-
-                    // ====================================
-                    // -- SECRET COMMANDS -----------
-                    // ====================================
-
-                    case "art":
-                        System.out.println("" +
-                                "██████╗░░█████╗░██████╗░░░░░██╗░░░░██╗██████╗░░██████╗███████╗██╗░░░██╗██████╗░░█████╗░██████╗░░█████╗░░██████╗██╗░░██╗\n" +
-                                "██╔══██╗██╔══██╗╚════██╗░░░██╔╝░░░██╔╝██╔══██╗██╔════╝██╔════╝██║░░░██║██╔══██╗██╔══██╗██╔══██╗██╔══██╗██╔════╝██║░░██║\n" +
-                                "██████╔╝██║░░██║░█████╔╝░░██╔╝░░░██╔╝░██████╔╝╚█████╗░█████╗░░██║░░░██║██║░░██║██║░░██║██████╦╝███████║╚█████╗░███████║\n" +
-                                "██╔═══╝░██║░░██║░╚═══██╗░██╔╝░░░██╔╝░░██╔═══╝░░╚═══██╗██╔══╝░░██║░░░██║██║░░██║██║░░██║██╔══██╗██╔══██║░╚═══██╗██╔══██║\n" +
-                                "██║░░░░░╚█████╔╝██████╔╝██╔╝░░░██╔╝░░░██║░░░░░██████╔╝███████╗╚██████╔╝██████╔╝╚█████╔╝██████╦╝██║░░██║██████╔╝██║░░██║\n" +
-                                "╚═╝░░░░░░╚════╝░╚═════╝░╚═╝░░░░╚═╝░░░░╚═╝░░░░░╚═════╝░╚══════╝░╚═════╝░╚═════╝░░╚════╝░╚═════╝░╚═╝░░╚═╝╚═════╝░╚═╝░░╚═╝\n" +
-                                "█▀█ █▀█ █▀█ ░░█ █▀▀ █▀▀ ▀█▀   █▄▄ █▄█   █░█░█ █▀█ █▀█ █▀▀ █░█ █▀▀ ▀█▀   ░░▄▀ ░░▄▀   █▀▀ █▀▀ █▄▄   ▀█ █▀█ ▀█ █▀\n" +
-                                "█▀▀ █▀▄ █▄█ █▄█ ██▄ █▄▄ ░█░   █▄█ ░█░   ▀▄▀▄▀ █▄█ █▀▄ █▄█ █▀█ ██▄ ░█░   ▄▀░░ ▄▀░░   █▀░ ██▄ █▄█   █▄ █▄█ █▄ ▄█");
-                        break;
+            // Identify the command itself.
+            Command commandToRun = COMMANDS.lookup(tokenizedCommand[0]);
 
-                    case "benjytab":
-                        System.out.println("\"Look for the audio file nerd\" - Benjamin Tabatchnik");
-                        break;
+            // In case the inputted command was was not recognized, prints message.
+            if (commandToRun == null) {
+                printError("Unknown command.. try \"help\" to see commands.");
+                return;
+            }
 
-                    case "boot":
-                        launchBootupSequence();
-                        break;
+            // Time the command from here on, rejected or not.
+            invocation = CommandMetrics.start(commandToRun.name());
 
+            // Check that enough arguments were given.
+            if (tokenizedCommand.length - 1 < commandToRun.arity()) {
+                throw new IndexOutOfBoundsException();
+            }
 
-                    // ====================================
-                    // -- UNRECOGNIZED COMMANDS -----------
-                    // ====================================
+            // Commands that change resources can only be run while resource safety is off.
+            if (commandToRun.modifiesResources() && resourceSafety) {
+                printError(remote ? "Resource safety is always on in a remote session; cannot perform command."
+                        : "Resource safety is currently on; cannot perform command. Use \"safety toggle\" to disable safety.");
+                return;
+            }
 
+            try {
+                commandToRun.execute(this, tokenizedCommand);
+            } finally {
 
-                    // In case the inputted command was was not recognized, prints message.
-                    default:
-                        System.out.println(COLOR_CODES.get("ERROR") + "Unknown command.. try \"help\" to see commands." + COLOR_CODES.get("RESET"));
+                // The command may have changed any directory or file; drop the cached listings and sizes so nothing stale is shown.
+                if (commandToRun.modifiesResources()) {
+                    DirectoryCache.invalidateAll();
+                    DiskUsage.invalidateAll();
                 }
             }
+        }
 
-            // Handles improper argument placements.
-            catch (IndexOutOfBoundsException e) {
-                System.out.println(COLOR_CODES.get("ERROR") + "Invalid argument(s). Use 'explain (command)' to see the valid argument(s). " + COLOR_CODES.get("RESET"));
-            }
+        // The next pipeline stage stopped reading; this stage just stops too.
+        catch (LinePipe.BrokenPipeException e) {
+            return;
+        }
 
-            // Handles file management.
-            catch (FileNotFoundException e) {
-                System.out.println(COLOR_CODES.get("ERROR") + "The file that you're trying to read cannot be found." + COLOR_CODES.get("RESET"));
-            }
+        // Handles commands that were stopped (ex. by 'kill').
+        catch (InterruptedException e) {
+            failure = e;
+            printError("The command was stopped before it finished.");
+        }
 
-            // Handles all other exceptions.
-            catch (Exception e) {
-                System.out.println(COLOR_CODES.get("ERROR") + "Error occured: " + e + COLOR_CODES.get("RESET"));
+        // Handles improper argument placements.
+        catch (IndexOutOfBoundsException e) {
+            failure = e;
+            printError("Invalid argument(s). Use 'explain (command)' to see the valid argument(s). ");
+        }
+
+        // Handles file management.
+        catch (FileNotFoundException e) {
+            failure = e;
+            printError("The file that you're trying to read cannot be found.");
+        }
+
+        // Handles all other exceptions.
+        catch (Exception e) {
+            failure = e;
+            printError("Error occured: " + e);
+        }
+
+        // Records the command's time, outcome and bytes for 'stats'.
+        finally {
+            if (invocation != null) {
+                invocation.finish(commandFailed, failure);
             }
+        }
+    }
+
+    // Returns the value of a variable for the lexer: the session's own values first, then the environment.
+    private String resolveVariable(String variableName) {
+        switch (variableName) {
+            case "?":
+                return String.valueOf(exitStatus != 0 ? exitStatus : commandFailed ? 1 : 0);
+            case "USER":
+                return username;
+            case "HOSTNAME":
+                return hostname;
+            case "PWD":
+                return workingDirectory.toString();
+            default:
+                return System.getenv(variableName);
+        }
+    }
+
+    // -- SESSION ACCESS (FOR OTHER COMMAND CLASSES) --
+
+    // Returns where this session prints its output.
+    PrintStream getOutput() {
+        return output;
+    }
+
+    // Returns where this session prints its errors.
+    PrintStream getErrorOutput() {
+        return errorOutput;
+    }
+
+    // Returns a copy of this session that reads from the given pipe and prints into the given stream.
+    Terminal forkStage(LinePipe stageInput, PrintStream stageOutput) {
+        return new Terminal(this, stageInput, stageOutput, errorOutput);
+    }
+
+    // Returns a snapshot of this session for a background job; everything it prints goes into the job's buffer.
+    Terminal forkJob(PrintStream jobOutput) {
+        return new Terminal(this, null, jobOutput, jobOutput);
+    }
+
+    // Returns this session's background jobs.
+    JobScheduler getJobs() {
+        return jobs;
+    }
+
+    // Returns the pipe feeding this pipeline stage (null if nothing is piped into it).
+    LinePipe getPipedInput() {
+        return pipedInput;
+    }
+
+    // Returns whether the last command of this session failed.
+    boolean hasCommandFailed() {
+        return commandFailed;
+    }
+
+    // Returns whether resource safety is on (commands that change resources are blocked).
+    boolean isResourceSafetyOn() {
+        return resourceSafety;
+    }
+
+    // Returns whether a person is typing into this session (so it can wait for their answer).
+    boolean isInteractive() {
+        return interactive;
+    }
+
+    // Returns whether this session is typed into the terminal window the program runs in (not a script or a connection).
+    boolean isConsole() {
+        return console;
+    }
+
+    // Reads the next line the person types (null at the end of the input).
+    String readInputLine() throws IOException {
+        return input.readLine();
+    }
 
-            // Saves the command into the log.
-            logCommand(command);
+    // Returns whether the person has typed something that was not read yet (always false if not interactive).
+    boolean hasTypedInput() throws IOException {
+        return interactive && input.ready();
+    }
 
+    // Returns the directory that this session is in.
+    File getWorkingDirectory() {
+        return workingDirectory;
+    }
+
+    // Records the exit code of a program the running command started; anything but 0 marks the command as failed.
+    void setExitStatus(int status) {
+        exitStatus = status;
+        if (status != 0) {
+            commandFailed = true;
         }
     }
 
+    // Prints an error message and marks the running command as failed.
+    void printError(String message) {
+        commandFailed = true;
+        errorOutput.println(COLOR_CODES.get("ERROR") + message + COLOR_CODES.get("RESET"));
+    }
+
     // -- TERMINAL METHODS -------------------
 
-    // Constructs the command dictionary constant (the constructor went up to 10 keys/values).
-    private static Map<String, String> initializeCommandDictionary(String mode) {
+    // Constructs the command registry constant; other classes can add their own commands to it at startup.
+    private static CommandRegistry initializeCommandRegistry() {
+
+        CommandRegistry registry = new CommandRegistry();
 
-        Map<String, String> completeDictionary = new java.util.HashMap<>(Map.of());
+        // ====================================
+        // -- ASSISTANCE COMMANDS -------------
+        // ====================================
 
-        if (mode.equals("DEFAULT")) {
-            // Create the dictionary.
+        registry.register(Command.of("help", 0, false, false,
+                "[ help (none) | Prints all available commands. ]",
+                (terminal, tokenizedCommand) -> terminal.printCommandNames(COMMANDS.listCommands())));
+
+        registry.register(Command.of("explain", 1, false, false,
+                "[ explain (function_name, all) | Explains the given command. ]",
+                (terminal, tokenizedCommand) -> terminal.explainCommand(tokenizedCommand[1])));
+
+        registry.register(Command.of("secrets", 0, false, false,
+                "[ secrets (none) | Prints a list of secret commands. ]",
+                (terminal, tokenizedCommand) -> terminal.printCommandNames(COMMANDS.listSecretCommands())));
+
+        // ====================================
+        // -- NAVIGATION COMMANDS -------------
+        // ====================================
+
+        registry.register(Command.of("whereami", 0, false, false,
+                "[ whereami (none) | Prints the current working directory. ]",
+                (terminal, tokenizedCommand) -> terminal.output.println(terminal.workingDirectory)));
+
+        registry.register(Command.of("go", 1, false, false,
+                "[ go (directory_name, up) | Will switch the working directory. ]",
+                (terminal, tokenizedCommand) -> terminal.switchDirectory(tokenizedCommand[1])));
+
+        registry.register(Command.of("lookhere", 0, false, false,
+                "[ lookhere (none, directory_name + -l, --sort name/size/time) | Will print the contents of the given directory; -l prints the size, time, permissions and type of each resource. ]",
+                (terminal, tokenizedCommand) -> terminal.lookHere(tokenizedCommand)));
+
+        registry.register(Command.of("exit", 0, false, false,
+                "[ exit (none) | Closes the program. ]",
+                (terminal, tokenizedCommand) -> terminal.running = false));
+
+        // ====================================
+        // -- FILE MANAGEMENT COMMANDS --------
+        // ====================================
+
+        registry.register(Command.of("read", 1, false, false,
+                "[ read (file_name + none, --lines first-last, --follow) | Prints the contents of a text file, or only the given lines (ex. --lines 10-20); --follow prints what gets added to it until Enter is pressed. ]",
+                (terminal, tokenizedCommand) -> terminal.readFile(tokenizedCommand)));
+
+        registry.register(Command.of("safety", 1, false, false,
+                "[ safety (toggle, status) | Disables commands that allow file changes. Ex. ‘delete’, ‘move’, etc. ]",
+                (terminal, tokenizedCommand) -> terminal.safetyCommand(tokenizedCommand[1])));
+
+        registry.register(Command.of("make", 2, true, false,
+                "[ make (file, directory + resource name | Makes the specified resource in the working directory. ]",
+                (terminal, tokenizedCommand) -> terminal.makeResource(tokenizedCommand[1], tokenizedCommand[2])));
+
+        registry.register(Command.of("delete", 2, true, false,
+                "[ delete (file, directory + resource name, + --trash) | Deletes the specified resource in the working directory; --trash moves it to the trash instantly instead. ]",
+                (terminal, tokenizedCommand) -> terminal.deleteResource(tokenizedCommand[1], tokenizedCommand[2],
+                        tokenizedCommand.length > 3 && tokenizedCommand[3].equalsIgnoreCase("--trash"))));
+
+        registry.register(Command.of("move", 3, true, false,
+                "[ move (resource_type + resource_name + directory_name, up) | Moves the resource to the specified directory. ]",
+                (terminal, tokenizedCommand) -> terminal.moveResource(tokenizedCommand[1], tokenizedCommand[2], tokenizedCommand[3])));
+
+        registry.register(Command.of("copy", 3, true, false,
+                "[ copy (resource_type + resource_name + directory_name, up, new_name) | Copies the resource into the directory, or under a new name. ]",
+                (terminal, tokenizedCommand) -> terminal.copyResource(tokenizedCommand[1], tokenizedCommand[2], tokenizedCommand[3])));
+
+        // ====================================
+        // -- USER DIAGNOSTICS COMMANDS -------
+        // ====================================
+
+        registry.register(Command.of("whoami", 0, false, false,
+                "[ whoami (none) | Prints username. ]",
+                (terminal, tokenizedCommand) -> terminal.output.println(terminal.username)));
+
+        registry.register(Command.of("whoishost", 0, false, false,
+                "[ whoishost (none) Prints hostname. ]",
+                (terminal, tokenizedCommand) -> terminal.output.println(terminal.hostname)));
+
+        // ====================================
+        // -- MISCILLANIOUS COMMANDS ----------
+        // ====================================
+
+        registry.register(Command.of("clear", 0, false, false,
+                "[ clear (none) | Prints many newlines on text-UI; clears the text on graphics-UI. ]",
+                (terminal, tokenizedCommand) -> terminal.clearScreen()));
+
+        registry.register(Command.of("log", 0, false, false,
+                "[ log (none, search + text) | Prints the numbered history of commands ('!n' runs number n again, '!!' the last one). ]",
+                (terminal, tokenizedCommand) -> terminal.printLog(tokenizedCommand)));
+
+        registry.register(Command.of("print", 0, false, false,
+                "[ print (text) | Prints the given text on the terminal. ]",
+                (terminal, tokenizedCommand) -> terminal.printText(tokenizedCommand)));
+
+        // ====================================
+        // -- SECRET COMMANDS -----------------
+        // ====================================
+
+        registry.register(Command.of("art", 0, false, true,
+                "[ art (none) | Prints an ASCII board that says pseudobash. ]",
+                (terminal, tokenizedCommand) -> terminal.output.println("" +
+                        "██████╗░░█████╗░██████╗░░░░░██╗░░░░██╗██████╗░░██████╗███████╗██╗░░░██╗██████╗░░█████╗░██████╗░░█████╗░░██████╗██╗░░██╗\n" +
+                        "██╔══██╗██╔══██╗╚════██╗░░░██╔╝░░░██╔╝██╔══██╗██╔════╝██╔════╝██║░░░██║██╔══██╗██╔══██╗██╔══██╗██╔══██╗██╔════╝██║░░██║\n" +
+                        "██████╔╝██║░░██║░█████╔╝░░██╔╝░░░██╔╝░██████╔╝╚█████╗░█████╗░░██║░░░██║██║░░██║██║░░██║██████╦╝███████║╚█████╗░███████║\n" +
+                        "██╔═══╝░██║░░██║░╚═══██╗░██╔╝░░░██╔╝░░██╔═══╝░░╚═══██╗██╔══╝░░██║░░░██║██║░░██║██║░░██║██╔══██╗██╔══██║░╚═══██╗██╔══██║\n" +
+                        "██║░░░░░╚█████╔╝██████╔╝██╔╝░░░██╔╝░░░██║░░░░░██████╔╝███████╗╚██████╔╝██████╔╝╚█████╔╝██████╦╝██║░░██║██████╔╝██║░░██║\n" +
+                        "╚═╝░░░░░░╚════╝░╚═════╝░╚═╝░░░░╚═╝░░░░╚═╝░░░░░╚═════╝░╚══════╝░╚═════╝░╚═════╝░░╚════╝░╚═════╝░╚═╝░░╚═╝╚═════╝░╚═╝░░╚═╝\n" +
+                        "█▀█ █▀█ █▀█ ░░█ █▀▀ █▀▀ ▀█▀   █▄▄ █▄█   █░█░█ █▀█ █▀█ █▀▀ █░█ █▀▀ ▀█▀   ░░▄▀ ░░▄▀   █▀▀ █▀▀ █▄▄   ▀█ █▀█ ▀█ █▀\n" +
+                        "█▀▀ █▀▄ █▄█ █▄█ ██▄ █▄▄ ░█░   █▄█ ░█░   ▀▄▀▄▀ █▄█ █▀▄ █▄█ █▀█ ██▄ ░█░   ▄▀░░ ▄▀░░   █▀░ ██▄ █▄█   █▄ █▄█ █▄ ▄█")));
+
+        registry.register(Command.of("benjytab", 0, false, true,
+                "[ benjytab (none) | Prints a hint to find some cool stuff. ]",
+                (terminal, tokenizedCommand) -> terminal.output.println("\"Look for the audio file nerd\" - Benjamin Tabatchnik")));
+
+        registry.register(Command.of("boot", 0, false, true,
+                "[ boot (none) | What awaits you before you launched pseudobash? ]",
+                (terminal, tokenizedCommand) -> terminal.launchBootupSequence()));
+
+        // Commands defined in other classes.
+        Pipeline.registerCommands(registry);
+        JobScheduler.registerCommands(registry);
+        Trash.registerCommands(registry);
+        FileFinder.registerCommands(registry);
+        NameIndex.registerCommands(registry);
+        ContentSearch.registerCommands(registry);
+        FileViewer.registerCommands(registry);
+        DiskUsage.registerCommands(registry);
+        AudioPlayer.registerCommands(registry);
+        ResourceWriter.registerCommands(registry);
+        ProgramRunner.registerCommands(registry);
+        CommandMetrics.registerCommands(registry);
+        Benchmarks.registerCommands(registry);
+
+        return registry;
+
+    }
 
-            // Add the assistance commands.
-            completeDictionary.put("help", "[ help (none) | Prints all available commands. ]");
-            completeDictionary.put("explain", "[ explain (function_name, all) | Explains the given command. ]");
-            completeDictionary.put("secrets", "[ secrets (none) | Prints a list of secret commands. ]");
+    // Prints a formatted list of the given commands' names.
+    private void printCommandNames(List<Command> commands) {
 
-            // Add the navigation commands.
-            completeDictionary.put("whereami", "[ whereami (none) | Prints the current working directory. ]");
-            completeDictionary.put("go", "[ go (directory_name, up) | Will switch the working directory. ]");
-            completeDictionary.put("lookhere", "[ lookhere (none, directory_name) | Will print the contents of the given directory. ]");
-            completeDictionary.put("exit", "[ exit (none) | Closes the program. ]");
+        // Print a helpful message.
+        output.println("* use 'explain (command_name)' to get a description of the command *");
 
-            // Add file management commands.
-            completeDictionary.put("read", "[ read (file_name) | Prints the contents of a text file. ]");
-            completeDictionary.put("safety", "[ safety (toggle, status) | Disables commands that allow file changes. Ex. ‘delete’, ‘move’, etc. ]");
-            completeDictionary.put("make", "[ make (file, directory + resource name | Makes the specified resource in the working directory. ]");
-            completeDictionary.put("delete", "[ delete (file, directory + resource name | Deletes the specified resource in the working directory. ]");
-            completeDictionary.put("play", "[ play (file_name) | Plays an audio file (only supports wav). ]");
-            completeDictionary.put("stop", "[ stop (none) | Stops playing audio if there is anything playing. ]");
-            completeDictionary.put("move", "[ move (resource_type + file_name + directory_name, up) | Moves the resource to the specified directory. Moving directories is currently unsupported. ]");
+        // Print a formatted list of all the command names.
+        for (int commandIndex = 0; commandIndex < commands.size(); commandIndex++) {
+
+            // Prints the name of a command.
+            String commandName = commands.get(commandIndex).name();
+            output.print(commandName + " ".repeat(23 - commandName.length()));
+
+            // Makes a new line every 3 names.
+            if (commandIndex != (commands.size() - 1) && (commandIndex + 1) % 3 == 0) {
+                output.println();
+            }
+        }
+        output.println();
+    }
 
-            // Add the user-diagnostic commands.
-            completeDictionary.put("whoami", "[ whoami (none) | Prints username. ]");
-            completeDictionary.put("whoishost", "[ whoishost (none) Prints hostname. ]");
+    // Prints the explanation of the requested command (or of every command).
+    private void explainCommand(String commandName) {
 
-            // Add the miscillanious commands.
-            completeDictionary.put("clear", "[ clear (none) | Prints many newlines on text-UI; clears the text on graphics-UI. ]");
-            completeDictionary.put("log", "[ log (none) | Prints an order of commands used in the session. ]");
-            completeDictionary.put("print", "[ print (text) | Prints the given text on the terminal. ]");
+        // This allows all the command explanations to be printed at once.
+        if (commandName.equals("all")) {
+            for (Command command : COMMANDS.listCommands()) {
+                output.println(command.explanation());
+            }
+            return;
+        }
 
+        // Check that the command requested actually exists.
+        Command command = COMMANDS.lookup(commandName);
+        if (command != null) {
+            output.println(command.explanation());
         }
+
+        // Print a message if the command requested doesn't exist.
         else {
-            completeDictionary.put("art", "[ art (none) | Prints an ASCII board that says pseudobash. ]");
-            completeDictionary.put("benjytab", "[ benjytab (none) | Prints a hint to find some cool stuff. ]");
-            completeDictionary.put("boot", "[ boot (none) | What awaits you before you launched pseudobash? ]");
+            output.println("The command you want explained does not exist.");
+        }
+    }
+
+    // Prints the contents of the working directory, or of the given directory (* from the working directory *).
+    private void lookHere(String[] tokenizedCommand) throws IOException {
+
+        // Sort the arguments into the directory and the options.
+        String directoryName = null, sortOrder = "name";
+        boolean longFormat = false;
+        for (int tokenIndex = 1; tokenIndex < tokenizedCommand.length; tokenIndex++) {
+            if (tokenizedCommand[tokenIndex].equals("-l")) {
+                longFormat = true;
+            } else if (tokenizedCommand[tokenIndex].equalsIgnoreCase("--sort")) {
+                sortOrder = tokenizedCommand[++tokenIndex].toLowerCase();
+            } else {
+                directoryName = tokenizedCommand[tokenIndex];
+            }
         }
 
-        return completeDictionary;
+        Comparator<DirectoryCache.Entry> ordering = listingOrder(sortOrder);
+        if (ordering == null) {
+            printError("Invalid parameter: --sort must be \"name\", \"size\" or \"time\".");
+            return;
+        }
 
+        // With no directory given --> Show the contents of the working directory.
+        Path directoryToList = workingDirectory.toPath();
+
+        // If there is a specific path that is given (* from the working directory *), there look in there.
+        if (directoryName != null) {
+
+            // Print message if doesn't exist.
+            if (!resourceExists(workingDirectory.toString() + FILE_SEPARATOR + directoryName, DIRECTORY)) {
+                output.println("No such directory exists.");
+                return;
+            }
+            directoryToList = directoryToList.resolve(directoryName);
+        }
+
+        List<DirectoryCache.Entry> directoryContents = new ArrayList<>(DirectoryCache.list(directoryToList).entries);
+        directoryContents.sort(ordering);
+        if (longFormat) {
+            printLongDirectoryContents(directoryContents);
+        } else {
+            printDirectoryContents(directoryContents);
+        }
+    }
+
+    // Returns the order to list resources in: by name, by size (largest first) or by time (newest first); null if unknown.
+    private static Comparator<DirectoryCache.Entry> listingOrder(String sortOrder) {
+        Comparator<DirectoryCache.Entry> byName = Comparator.comparing(resource -> resource.sortName);
+        switch (sortOrder) {
+            case "name":
+                return byName;
+            case "size":
+                return Comparator.comparingLong((DirectoryCache.Entry resource) -> -resource.size).thenComparing(byName);
+            case "time":
+                return Comparator.comparingLong((DirectoryCache.Entry resource) -> -resource.modifiedTime).thenComparing(byName);
+            default:
+                return null;
+        }
+    }
+
+    // Prints or toggles the resource safety.
+    private void safetyCommand(String argument) {
+        if (argument.equalsIgnoreCase("status")) {
+            output.print("Resource safety is currently ");
+            if (resourceSafety) {
+                output.println("ON.");
+            } else {
+                output.println("OFF.");
+            }
+        } else if (argument.equalsIgnoreCase("toggle")) {
+
+            // Someone connected over the network must not change (or run) anything on this machine.
+            if (remote) {
+                printError("Resource safety cannot be turned off in a remote session.");
+                return;
+            }
+            toggleSafety();
+            output.print("Resource safety is now ");
+            if (resourceSafety) {
+                output.println("ON.");
+            } else {
+                output.println("OFF.");
+            }
+        } else {
+            // bum thing to do, might just ignore idk
+            printError("Invalid argument(s). Use 'explain (command)' to see the valid argument(s). ");
+        }
+    }
+
+    // Prints the numbered history of commands, or only the ones containing the searched text.
+    private void printLog(String[] tokenizedCommand) {
+        List<CommandHistory.Entry> entries = (tokenizedCommand.length > 1 && tokenizedCommand[1].equalsIgnoreCase("search"))
+                ? history.search(tokenizedCommand[2])
+                : history.entries();
+
+        // Build the whole log first, then print it at once.
+        int numberWidth = Long.toString(history.newestNumber()).length();
+        StringBuilder printedLog = new StringBuilder();
+        for (CommandHistory.Entry entry : entries) {
+            String number = Long.toString(entry.number);
+            printedLog.append(number).append(" ".repeat(numberWidth - number.length())).append(" | ").append(entry.command).append(System.lineSeparator());
+        }
+        output.print(printedLog);
+    }
+
+    // Prints the given text on the terminal.
+    private void printText(String[] tokenizedCommand) {
+
+        // Goes through each word/phrase inputted after the 'print' command.
+        for (int possibleTerm = 1; possibleTerm < tokenizedCommand.length; possibleTerm++) {
+            output.print(tokenizedCommand[possibleTerm] + " ");
+        }
+
+        output.println();
     }
 
     // Checks whether a resource exists (* specifically as the desired data type *).
     private boolean resourceExists(String absoluteFilePath, int desiredResourceType) {
 
-        // Cast the filepath into a file object.
-        File resource = new File(absoluteFilePath);
+        // Look the resource up in its directory's (cached) listing.
+        DirectoryCache.Entry resource = DirectoryCache.find(Paths.get(absoluteFilePath));
 
         // Check that: | 1. An item of the filepath EXISTS. | 2. The resource is of the desired type.
-        if ((resource.exists() && (desiredResourceType == DIRECTORY && resource.isDirectory())) || (desiredResourceType == FILE && resource.isFile())) {
+        if (resource != null && ((desiredResourceType == DIRECTORY && resource.isDirectory()) || (desiredResourceType == FILE && resource.isFile()))) {
             return true;
         }
 
@@ -431,7 +788,7 @@ public class Terminal {
 
             // Check that we are already at root directory.
             if (parentDirectory == null) {
-                System.out.println(COLOR_CODES.get("ERROR") + "You are already at the root directory." + COLOR_CODES.get("RESET"));
+                printError("You are already at the root directory.");
             }
             // Otherwise, go to parent directory.
             else {
@@ -450,94 +807,119 @@ public class Terminal {
             }
             // Gives a message if doesnt exist.
             else {
-                System.out.println(COLOR_CODES.get("ERROR") + "No such directory exists." + COLOR_CODES.get("RESET"));
+                printError("No such directory exists.");
             }
         }
     }
 
-    // Returns an array containing the contents of a requested directory.
-    private String[] getDirectoryContents(String directoryFilepath) {
-        return new File(directoryFilepath).list();
-    }
-
     // Prints a formatted list of directory contents.
-    private void printDirectoryContents(String[] directoryContents) {
+    private void printDirectoryContents(List<DirectoryCache.Entry> directoryContents) {
 
-        // Iterate through each element and print it.
-        for (int directoryIndex = 0; directoryIndex < directoryContents.length; directoryIndex++) {
+        // Build the whole grid first, then print it at once.
+        StringBuilder grid = new StringBuilder(directoryContents.size() * 32);
 
-            // Color-code the output.
-            File currentResource = new File(workingDirectory.toString() + FILE_SEPARATOR + directoryContents[directoryIndex]);
-            String colorToUse = "";
-            if (currentResource.isDirectory()) {
-                colorToUse = "DIRECTORY";
-            } else {
-                colorToUse = "FILE";
-                if (currentResource.isHidden()) {
-                    colorToUse = "HIDDEN-FILE";
-                }
-            }
+        // Iterate through each element and add it.
+        for (int directoryIndex = 0; directoryIndex < directoryContents.size(); directoryIndex++) {
 
-            // Print element.
-            System.out.print(COLOR_CODES.get(colorToUse) + directoryContents[directoryIndex] + COLOR_CODES.get("RESET") + " ".repeat(23 - directoryContents[directoryIndex].length()));
+            // Color-code the output (the attributes were read when the directory was listed).
+            DirectoryCache.Entry currentResource = directoryContents.get(directoryIndex);
+            grid.append(COLOR_CODES.get(colorOf(currentResource))).append(currentResource.name).append(COLOR_CODES.get("RESET"))
+                    .append(" ".repeat(Math.max(0, 23 - currentResource.name.length())));
 
             // New line every 3 elements.
-            if (directoryIndex != (directoryContents.length - 1) && (directoryIndex + 1) % 3 == 0) {
-                System.out.println();
+            if (directoryIndex != (directoryContents.size() - 1) && (directoryIndex + 1) % 3 == 0) {
+                grid.append(System.lineSeparator());
             }
         }
-        System.out.println();
+        output.println(grid);
     }
 
-    // Adds the command to the log.
-    private void logCommand(String commandMade) {
+    // Prints one line per resource: type and permissions, size, last modification time and name; the whole listing is printed at once.
+    private void printLongDirectoryContents(List<DirectoryCache.Entry> directoryContents) {
+        StringBuilder listing = new StringBuilder(directoryContents.size() * 80);
+        ZoneId timeZone = ZoneId.systemDefault();
+
+        // Many resources share their modification minute; format each distinct minute once.
+        Map<Long, String> formattedMinutes = new HashMap<>();
+
+        for (DirectoryCache.Entry resource : directoryContents) {
+            listing.append(resource.permissions());
+            appendPadded(listing, groupDigits(resource.size), 16);
+            listing.append("  ")
+                    .append(formattedMinutes.computeIfAbsent(resource.modifiedTime / 60_000, minute -> LocalDateTime.ofInstant(Instant.ofEpochSecond(minute * 60), timeZone).format(LISTING_DATE_FORMAT)))
+                    .append("  ")
+                    .append(COLOR_CODES.get(colorOf(resource))).append(resource.name).append(COLOR_CODES.get("RESET"))
+                    .append(System.lineSeparator());
+        }
+        output.print(listing);
+    }
 
-        // Check that the command is not just some blank spaces.
-        if (!commandMade.isEmpty()) {
-            log.add(commandMade);
+    // Returns the number with commas between groups of three digits (ex. 1,234,567).
+    private static String groupDigits(long number) {
+        String digits = Long.toString(number);
+        StringBuilder grouped = new StringBuilder(digits.length() + digits.length() / 3);
+        for (int digitIndex = 0; digitIndex < digits.length(); digitIndex++) {
+            if (digitIndex > 0 && (digits.length() - digitIndex) % 3 == 0) {
+                grouped.append(',');
+            }
+            grouped.append(digits.charAt(digitIndex));
         }
+        return grouped.toString();
     }
 
-    // ----------------------------------------------------------------------------------------------------
+    // Appends the text right-aligned in a column of the given width (at least one space before it).
+    private static void appendPadded(StringBuilder line, String text, int width) {
+        for (int padding = Math.max(1, width - text.length()); padding > 0; padding--) {
+            line.append(' ');
+        }
+        line.append(text);
+    }
 
-    // Reads the given text file.
-    private void readFile(String filePath) throws FileNotFoundException {
+    // Returns the color key for a resource in a listing.
+    private static String colorOf(DirectoryCache.Entry resource) {
+        if (resource.isDirectory()) {
+            return "DIRECTORY";
+        }
+        return resource.isHidden() ? "HIDDEN-FILE" : "FILE";
+    }
 
-        // Add file extenstion if not there (COULD BE .java, etc).
-//        if (!filePath.endsWith(".txt")) {
-//            filePath += ".txt";
-//        }
 
-        // Technically should check if file exists here.. but exception already gives the message.
+    // Adds the command to the log.
+    private void logCommand(String commandMade) {
 
-        // Initialize the reading resources.
-        File fileToRead = new File(workingDirectory.toString() + FILE_SEPARATOR + filePath);
-        Scanner fileReader = new Scanner(fileToRead);
+        // Blank commands are not kept (the history checks).
+        history.add(commandMade);
+    }
 
-        // Read the file.
-        while (fileReader.hasNextLine()) {
-            System.out.println(fileReader.nextLine());
-        }
+    // ----------------------------------------------------------------------------------------------------
 
-        // Close reader.
-        fileReader.close(); // should use try finally or try with resource
+    // Prints a text file, only the lines given with '--lines A-B', or (with '--follow') what gets appended to it.
+    private void readFile(String[] tokenizedCommand) throws IOException {
+        Path fileToRead = workingDirectory.toPath().resolve(tokenizedCommand[1]);
 
+        if (tokenizedCommand.length > 2 && tokenizedCommand[2].equalsIgnoreCase("--follow")) {
+            FileViewer.follow(this, fileToRead);
+        } else if (tokenizedCommand.length > 2 && tokenizedCommand[2].equalsIgnoreCase("--lines")) {
+            long[] lineRange = FileViewer.parseLineRange(tokenizedCommand[3]);
+            if (lineRange == null) {
+                printError("Invalid line range; use '--lines first-last' (ex. --lines 10-20).");
+                return;
+            }
+            FileViewer.printLines(this, fileToRead, lineRange[0], lineRange[1]);
+        } else {
+            FileViewer.printLines(this, fileToRead, 1, Long.MAX_VALUE);
+        }
     }
 
+    // Makes the requested resource (resource safety is checked by the registry before this runs).
     private void makeResource(String resourceType, String newResourceName) throws IOException {
 
-        if (resourceSafety) {
-            System.out.println(COLOR_CODES.get("ERROR") + "Resource safety is currently on; cannot perform command. Use \"safety toggle\" to disable safety." + COLOR_CODES.get("RESET"));
+        if (resourceType.equalsIgnoreCase("file")) {
+            makeFile(newResourceName);
+        } else if (resourceType.equalsIgnoreCase("directory") || resourceType.equalsIgnoreCase("folder")) {
+            makeDirectory(newResourceName);
         } else {
-
-            if (resourceType.equalsIgnoreCase("file")) {
-                makeFile(newResourceName);
-            } else if (resourceType.equalsIgnoreCase("directory") || resourceType.equalsIgnoreCase("folder")) {
-                makeDirectory(newResourceName);
-            } else {
-                System.out.println(COLOR_CODES.get("ERROR") + "Invalid parameter: must enter \"file\" or \"directory\" to specify resource creation." + COLOR_CODES.get("RESET"));
-            }
-
+            printError("Invalid parameter: must enter \"file\" or \"directory\" to specify resource creation.");
         }
 
     }
@@ -554,15 +936,15 @@ public class Terminal {
 
         // Check that there is no text file by that name already.
         if (!(new File(workingDirectory.toString(), filename)).createNewFile()) {
-            System.out.println(COLOR_CODES.get("ERROR") + "A file by that name already exists." + COLOR_CODES.get("RESET"));
+            printError("A file by that name already exists.");
         }
 
     }
 
     // Makes a directory in the working directory.
     private void makeDirectory(String directoryname) {
-        if (Arrays.asList(getDirectoryContents(workingDirectory.toString())).contains(directoryname)) {
-            System.out.println(COLOR_CODES.get("ERROR") + "A directory by that name already exists." + COLOR_CODES.get("RESET"));
+        if (DirectoryCache.find(workingDirectory.toPath().resolve(directoryname)) != null) {
+            printError("A directory by that name already exists.");
         } else {
             new File(workingDirectory.toString() + FILE_SEPARATOR + directoryname).mkdir();
         }
@@ -572,170 +954,199 @@ public class Terminal {
         resourceSafety = !resourceSafety;
     }
 
-    // indev method, will display cool metadata abt resource
-//    private int identifyResource(String filepath) {
-//        File file = new File(filepath);
-//
-//        if (file.exists()) {
-//            if (file.isFile()) {
-//                System.out.println("Resource type: FILE");
-//                System.out.println("File type: -use-file-extension-");
-//                return FILE;
-//            }
-//            else {
-//                return DIRECTORY;
-//            }
-//        }
-//        else {
-//            return (-1);
-//        }
-//    }
-
-    private void deleteResource(String resourceType, String resourceFilepath) {
-        if (resourceSafety) {
-            System.out.println(COLOR_CODES.get("ERROR") + "Resource safety is currently on; cannot perform command. Use \"safety toggle\" to disable safety." + COLOR_CODES.get("RESET"));
+    private void deleteResource(String resourceType, String resourceFilepath, boolean moveToTrash) throws InterruptedException, IOException {
+
+        resourceFilepath = workingDirectory.toString() + FILE_SEPARATOR + resourceFilepath;
+
+        if (moveToTrash) {
+            trashResource(resourceType, resourceFilepath);
+        } else if (resourceType.equalsIgnoreCase("file")) {
+            deleteFile(resourceFilepath);
+        } else if (resourceType.equalsIgnoreCase("directory") || resourceType.equalsIgnoreCase("folder")) {
+            deleteDirectory(resourceFilepath);
         } else {
+            printError("Invalid parameter: must enter \"file\" or \"directory\" to specify resource deletion.");
+        }
 
-            resourceFilepath = workingDirectory.toString() + FILE_SEPARATOR + resourceFilepath;
+    }
 
-            if (resourceType.equalsIgnoreCase("file")) {
-                deleteFile(resourceFilepath);
-            } else if (resourceType.equalsIgnoreCase("directory") || resourceType.equalsIgnoreCase("folder")) {
-                deleteDirectory(resourceFilepath);
-            } else {
-                System.out.println(COLOR_CODES.get("ERROR") + "Invalid parameter: must enter \"file\" or \"directory\" to specify resource deletion." + COLOR_CODES.get("RESET"));
-            }
+    // Moves the resource into the trash with one rename (no matter its size); 'trash restore' brings it back.
+    private void trashResource(String resourceType, String filepath) throws IOException {
+        int desiredResourceType = parseResourceType(resourceType);
+        if (desiredResourceType == -1) {
+            printError("Invalid parameter: must enter \"file\" or \"directory\" to specify resource deletion.");
+            return;
+        }
 
+        if (!resourceExists(filepath, desiredResourceType)) {
+            printError("The " + resourceType.toLowerCase() + " you are trying to delete does not exist.");
+            return;
         }
 
+        String entryName = Trash.moveToTrash(Paths.get(filepath));
+        output.println("Moved to the trash as \"" + entryName + "\" (use 'trash restore " + entryName + "' to undo).");
     }
 
     private void deleteFile(String filepath) {
         if (resourceExists(filepath, FILE)) {
             (new File(filepath)).delete();
         } else {
-            System.out.println(filepath);
-            System.out.println(COLOR_CODES.get("ERROR") + "The file you are trying to delete does not exist." + COLOR_CODES.get("RESET"));
+            output.println(filepath);
+            printError("The file you are trying to delete does not exist.");
         }
     }
 
-    // recursive
-    private void emptyDirectory(File directoryFile) {
-        for (File subResource : directoryFile.listFiles()) {
+    // Deletes the directory and everything in it (subdirectories in parallel), then prints a summary.
+    private void deleteDirectory(String filepath) throws InterruptedException {
+        if (!resourceExists(filepath, DIRECTORY)) {
+            printError("The directory you are trying to delete does not exist.");
+            return;
+        }
 
-            // if it is a subfolder,e.g Rohan and Ritik,
-            //  recursively call function to empty subfolder
-            if (subResource.isDirectory()) {
-                emptyDirectory(subResource);
-            }
+        DirectoryDeleter.Summary summary = new DirectoryDeleter().deleteTree(Paths.get(filepath), output);
+        summary.print(this);
+    }
+
+    private void moveResource(String resourceType, String absoluteFilePath, String newDirectory) throws IOException, InterruptedException {
+        File sourceFile = new File(workingDirectory, absoluteFilePath);
 
-            // delete files and empty subfolders
-            subResource.delete();
+        // Work out which kind of resource is being moved.
+        int desiredResourceType = parseResourceType(resourceType);
+        if (desiredResourceType == -1) {
+            printError("Invalid parameter: must enter \"file\" or \"directory\" to specify resource relocation.");
+            return;
         }
-    }
 
-    private void deleteDirectory(String filepath) {
-        File directoryAsFile = new File(filepath);
+        if (!resourceExists(sourceFile.getAbsolutePath(), desiredResourceType)) {
+            printError("The " + resourceType.toLowerCase() + " you are trying to move does not exist.");
+            return;
+        }
 
-        emptyDirectory(directoryAsFile);
+        // Work out where it goes.
+        if (newDirectory.equalsIgnoreCase("up") && workingDirectory.getParentFile() == null) {
+            printError("Cannot move up. Already at the root directory.");
+            return;
+        }
+        File targetDir = resolveTargetDirectory(newDirectory);
+        if (targetDir == null) {
+            printError("Relocation directory unclear.");
+            return;
+        }
 
-        directoryAsFile.delete();
+        if (desiredResourceType == FILE) {
+            moveFile(sourceFile, targetDir);
+        } else {
+            moveDirectory(sourceFile, targetDir);
+        }
     }
 
-    private void moveResource(String resourceType, String absoluteFilePath, String newDirectory) {
-        if (resourceSafety) {
-            System.out.println(COLOR_CODES.get("ERROR") +
-                    "Resource safety is currently on; cannot perform command. Use \"safety toggle\" to disable safety." +
-                    COLOR_CODES.get("RESET"));
-            return; // instead of else
+    // Copies the resource into a directory (or "up"), or to a new name in the working directory.
+    private void copyResource(String resourceType, String resourceName, String destination) throws IOException, InterruptedException {
+        File sourceFile = new File(workingDirectory, resourceName);
+
+        // Work out which kind of resource is being copied.
+        int desiredResourceType = parseResourceType(resourceType);
+        if (desiredResourceType == -1) {
+            printError("Invalid parameter: must enter \"file\" or \"directory\" to specify the resource to copy.");
+            return;
         }
 
-        File sourceFile = new File(workingDirectory, absoluteFilePath);
+        if (!resourceExists(sourceFile.getAbsolutePath(), desiredResourceType)) {
+            printError("The " + resourceType.toLowerCase() + " you are trying to copy does not exist.");
+            return;
+        }
 
-        if (resourceType.equalsIgnoreCase("file")) {
-            if (!resourceExists(sourceFile.getAbsolutePath(), FILE)) {
-                System.out.println(COLOR_CODES.get("ERROR") + "The file you are trying to move does not exist." + COLOR_CODES.get("RESET"));
+        // Work out where it goes: into an existing directory, or as a new name.
+        File targetDir = resolveTargetDirectory(destination);
+        File destinationFile;
+        if (targetDir != null) {
+            destinationFile = new File(targetDir, sourceFile.getName());
+        } else if (new File(workingDirectory, destination).getParentFile().isDirectory()) {
+            destinationFile = new File(workingDirectory, destination);
+        } else {
+            printError("Copy destination unclear.");
+            return;
+        }
+
+        // A symbolic link is copied as a link, not as the resource it points to.
+        Path sourcePath = sourceFile.toPath().toAbsolutePath().normalize();
+        Path destinationPath = destinationFile.toPath().toAbsolutePath().normalize();
+
+        if (desiredResourceType == DIRECTORY) {
+
+            // A directory cannot be copied into itself (the copy would never end).
+            if (!Files.isSymbolicLink(sourcePath) && destinationFile.getParentFile().toPath().toRealPath().resolve(destinationPath.getFileName()).startsWith(sourcePath.toRealPath())) {
+                printError("A directory cannot be copied into itself.");
                 return;
             }
-            if (newDirectory.equalsIgnoreCase("up")) {
-                File parentDir = workingDirectory.getParentFile();
-                if (parentDir == null) {
-                    System.out.println(COLOR_CODES.get("ERROR") + "Cannot move up. Already at the root directory." + COLOR_CODES.get("RESET"));
-                    return;
-                }
-                moveFile(sourceFile, parentDir);
+            if (destinationFile.exists()) {
+                printError("A resource by that name already exists at the destination.");
+                return;
+            }
+        } else if (destinationFile.exists()) {
+            if (destinationFile.isDirectory() || Files.isSameFile(sourcePath, destinationPath)) {
+                printError("A file cannot be copied onto itself or onto a directory.");
+                return;
+            }
+            errorOutput.println(COLOR_CODES.get("ERROR") + "The file already exists at the destination. Overwriting..." + COLOR_CODES.get("RESET"));
+        }
 
-            } else if (new File(workingDirectory, newDirectory).isDirectory()) {  // Check if the directory exists inside workingDirectory
-                File targetDir = new File(workingDirectory, newDirectory);
-                moveFile(sourceFile, targetDir);
+        ResourceTransfer.Summary summary = new ResourceTransfer(output).copy(sourcePath, destinationPath);
+        summary.print(this, "Copied");
+    }
 
-            } else {
-                System.out.println(COLOR_CODES.get("ERROR") + "Relocation directory unclear." + COLOR_CODES.get("RESET"));
-            }
+    // Returns the directory named by a move/copy destination ("up" or a directory in the working directory), or null.
+    private File resolveTargetDirectory(String destination) {
+        if (destination.equalsIgnoreCase("up")) {
+            return workingDirectory.getParentFile();
+        }
 
+        // Check if the directory exists inside workingDirectory.
+        File targetDir = new File(workingDirectory, destination);
+        return targetDir.isDirectory() ? targetDir : null;
+    }
 
+    // Turns "file" / "directory" (or "folder") into FILE / DIRECTORY; returns -1 for anything else.
+    static int parseResourceType(String resourceType) {
+        if (resourceType.equalsIgnoreCase("file")) {
+            return FILE;
         } else if (resourceType.equalsIgnoreCase("directory") || resourceType.equalsIgnoreCase("folder")) {
-            System.out.println(COLOR_CODES.get("ERROR") + "Sorry! Directory relocation is currently unsupported!" + COLOR_CODES.get("RESET"));
-        } else {
-            System.out.println(COLOR_CODES.get("ERROR") + "Invalid parameter: must enter \"file\" or \"directory\" to specify resource relocation." + COLOR_CODES.get("RESET"));
+            return DIRECTORY;
         }
+        return -1;
     }
 
-    private void moveFile(File sourceFile, File targetDirectory) {
+    private void moveFile(File sourceFile, File targetDirectory) throws IOException, InterruptedException {
         File destinationFile = new File(targetDirectory, sourceFile.getName());
 
         if (destinationFile.exists()) {
-            System.out.println(COLOR_CODES.get("ERROR") +
-                    "The file already exists in the target directory. Overwriting..." +
-                    COLOR_CODES.get("RESET"));
+            errorOutput.println(COLOR_CODES.get("ERROR") + "The file already exists in the target directory. Overwriting..." + COLOR_CODES.get("RESET"));
             destinationFile.delete();  // Delete existing file before moving
         }
 
-        if (!sourceFile.renameTo(destinationFile)) {
-            System.out.println(COLOR_CODES.get("ERROR") + "Failed to move the file." + COLOR_CODES.get("RESET"));
-        }
+        // Renames when possible; copies then deletes when the target is on another filesystem.
+        ResourceTransfer.Summary summary = new ResourceTransfer(output).move(sourceFile.toPath(), destinationFile.toPath());
+        summary.print(this, "Moved");
     }
 
-    private void playAudioFile(String localFilePath) throws LineUnavailableException, UnsupportedAudioFileException, IOException {
-        String absoluteFilePath = workingDirectory.toString() + FILE_SEPARATOR + localFilePath;
-        File audioFile = new File(absoluteFilePath);
-
-        if (resourceExists(absoluteFilePath, FILE)) {
-            if (audioPlayer == null || !audioPlayer.isRunning()) { // use isOpen? isActive??
+    // Moves the directory (and everything in it) into the target directory.
+    private void moveDirectory(File sourceDirectory, File targetDirectory) throws IOException, InterruptedException {
+        // A symbolic link is moved itself (keeping its own name), never the directory it points to.
+        Path sourcePath = sourceDirectory.toPath().toAbsolutePath().normalize();
+        Path destinationPath = targetDirectory.toPath().toRealPath().resolve(sourcePath.getFileName());
 
-                if (absoluteFilePath.endsWith(".wav")) {
-                    audioPlayer = AudioSystem.getClip();
-                    audioPlayer.open(AudioSystem.getAudioInputStream(audioFile));
-
-                    String trackName = absoluteFilePath.split("/")[absoluteFilePath.split("/").length - 1];
-                    String trackArtist = "Unknown";
-                    // rough workaround - i would want to try using some kind of metadata for this..
-                    if (absoluteFilePath.endsWith("kyrgyzstan.wav") || absoluteFilePath.endsWith("vabere.wav")) {
-                        trackArtist = "Benjamin Tabatchnik";
-                    } else if (absoluteFilePath.endsWith("gruppa-krovi.wav")) {
-                        trackArtist = "Kino";
-                    }
-
-                    audioPlayer.start();
-                    System.out.println("Started playing \"" + trackName + "\" by " + trackArtist + ".");
-                } else {
-                    System.out.println(COLOR_CODES.get("ERROR") + "The file you are requesting to play is not a .wav file; it is unsupported." + COLOR_CODES.get("RESET"));
-                }
-            } else {
-                System.out.println(COLOR_CODES.get("ERROR") + "There is already something being played. Use \"stop\" to stop playing it, then try again." + COLOR_CODES.get("RESET"));
-            }
-        } else {
-            System.out.println(COLOR_CODES.get("ERROR") + "The file you are trying to play does not exist." + COLOR_CODES.get("RESET"));
+        // A directory cannot be moved into itself (or into one of its own subdirectories).
+        if (!Files.isSymbolicLink(sourcePath) && destinationPath.startsWith(sourcePath.toRealPath())) {
+            printError("A directory cannot be moved into itself.");
+            return;
         }
-    }
-
-    private void stopPlayingAudio() {
-        if (audioPlayer != null && audioPlayer.isRunning()) {
-            audioPlayer.stop();
-            audioPlayer.close();
-        } else {
-            System.out.println(COLOR_CODES.get("ERROR") + "Nothing is currently playing." + COLOR_CODES.get("RESET"));
+        if (Files.exists(destinationPath, LinkOption.NOFOLLOW_LINKS)) {
+            printError("A resource by that name already exists in the target directory.");
+            return;
         }
+
+        ResourceTransfer.Summary summary = new ResourceTransfer(output).move(sourcePath, destinationPath);
+        summary.print(this, "Moved");
     }
 
     private void launchBootupSequence() throws InterruptedException {
@@ -755,19 +1166,19 @@ public class Terminal {
 
         // Just prints many newlines to simulate cleared screen.
         for (int i = 0; i < 50; i++) {
-            System.out.println();
+            output.println();
         }
 
     }
 
     private void typePrintEffect(String toPrint) throws InterruptedException {
         for (int charIndex = 0; charIndex < toPrint.length(); charIndex++) {
-            System.out.print(toPrint.charAt(charIndex));
+            output.print(toPrint.charAt(charIndex));
             Thread.sleep(200);
         }
-        System.out.println();
+        output.println();
     }
 
-    //write / open ide
+    //open ide
 
 }
\ No newline at end of file
@@ -0,0 +1,319 @@
+// == IMPORTS =======================
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+// == CLASS =======================
+// TRASH | Instant deletes by renaming into a per-user trash on the same filesystem; a background purger frees the space.
+//
+// Trashed resources stay restorable until 'trash empty'; nothing expires on its own.
+public class Trash {
+
+    // -- CONSTANT / UTILITY VARIABLES ------
+
+    static final String TRASH_NAME = ".pseudobash-trash";
+    static final String FILES_FOLDER = "files", INFO_FOLDER = "info", PURGE_FOLDER = "purge", INFO_EXTENSION = ".trashinfo";
+
+    // How often the purger looks for leftovers of emptying that an earlier session did not finish.
+    static final long PURGE_SCAN_INTERVAL_MINUTES = 60;
+
+    static final DateTimeFormatter ENTRY_NAME_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-SSS");
+    static final DateTimeFormatter LIST_DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+
+    // Every trash directory used so far (the home trash, plus one per other filesystem).
+    private static final Set<Path> KNOWN_TRASH_DIRECTORIES = new LinkedHashSet<>();
+
+    // Resources waiting to be deleted by the purger (always inside some trash's purge folder).
+    private static final BlockingQueue<Path> PURGE_QUEUE = new LinkedBlockingQueue<>();
+    private static Thread purgerThread;
+
+    // -- COMMAND REGISTRATION ---------------
+
+    static void registerCommands(CommandRegistry registry) {
+        registry.register(Command.of("trash", 1, false, false,
+                "[ trash (list, restore + entry_name, empty) | Manages resources deleted with 'delete (file, directory) name --trash'; they stay restorable until the trash is emptied. ]",
+                Trash::trashCommand));
+    }
+
+    private static void trashCommand(Terminal terminal, String[] tokenizedCommand) throws IOException {
+        String action = tokenizedCommand[1].toLowerCase();
+
+        // Only listing is allowed while resource safety is on.
+        if (!action.equals("list") && terminal.isResourceSafetyOn()) {
+            terminal.printError("Resource safety is currently on; cannot perform command. Use \"safety toggle\" to disable safety.");
+            return;
+        }
+
+        switch (action) {
+            case "list":
+                listTrash(terminal);
+                break;
+            case "restore":
+                restoreEntry(terminal, tokenizedCommand[2]);
+                break;
+            case "empty":
+                emptyTrash(terminal);
+                break;
+            default:
+                terminal.printError("Invalid argument(s). Use 'explain (command)' to see the valid argument(s). ");
+        }
+    }
+
+    // -- TRASH METHODS ----------------------
+
+    // Moves the resource into the trash with a single rename; returns the entry name it can be restored with.
+    static String moveToTrash(Path resource) throws IOException {
+
+        Path trashDirectory = trashDirectoryFor(resource);
+        Properties info = new Properties();
+        info.setProperty("path", resource.toAbsolutePath().toString());
+        info.setProperty("deleted", Instant.now().toString());
+
+        // Write down where the resource came from first, so a trashed resource always has its info. Making the info file
+        // (never replacing one) claims the entry name; two resources trashed in the same millisecond get a counter.
+        String timestamp = LocalDateTime.now().format(ENTRY_NAME_FORMAT);
+        String entryName;
+        Path infoFile;
+        for (int attempt = 1; ; attempt++) {
+            entryName = timestamp + (attempt == 1 ? "" : "-" + attempt) + "_" + resource.getFileName();
+            infoFile = trashDirectory.resolve(INFO_FOLDER).resolve(entryName + INFO_EXTENSION);
+            try (Writer infoWriter = Files.newBufferedWriter(infoFile, StandardCharsets.UTF_8, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                info.store(infoWriter, null);
+                break;
+            } catch (FileAlreadyExistsException e) {
+                // Taken; try the next counter.
+            }
+        }
+
+        // A plain rename (never replacing an entry that is already there).
+        try {
+            Files.move(resource, trashDirectory.resolve(FILES_FOLDER).resolve(entryName));
+        } catch (IOException e) {
+            Files.deleteIfExists(infoFile);
+            throw e;
+        }
+
+        startPurger();
+        return entryName;
+    }
+
+    // Prints every trashed resource: its entry name, where it came from and when it was deleted.
+    private static void listTrash(Terminal terminal) throws IOException {
+        List<Path> entries = listEntries(terminal);
+        if (entries.isEmpty()) {
+            terminal.getOutput().println("The trash is empty.");
+            return;
+        }
+
+        for (Path entry : entries) {
+            Properties info = readInfo(entry);
+            String deleted = LocalDateTime.ofInstant(Instant.parse(info.getProperty("deleted", Instant.EPOCH.toString())), ZoneId.systemDefault()).format(LIST_DATE_FORMAT);
+            terminal.getOutput().println(entry.getFileName() + "  (" + deleted + ")  " + info.getProperty("path", "unknown origin"));
+        }
+    }
+
+    // Moves a trashed resource back to where it was deleted from.
+    private static void restoreEntry(Terminal terminal, String entryName) throws IOException {
+        for (Path entry : listEntries(terminal)) {
+            if (!entry.getFileName().toString().equals(entryName)) {
+                continue;
+            }
+
+            String originalName = readInfo(entry).getProperty("path");
+            if (originalName == null) {
+                terminal.printError("Cannot restore; the entry's info is missing, so where it was deleted from is unknown.");
+                return;
+            }
+
+            // Never replaces what is at the original path now (even a link that points nowhere).
+            Path originalPath = Paths.get(originalName);
+            try {
+                Files.move(entry, originalPath);
+            } catch (FileAlreadyExistsException e) {
+                terminal.printError("Cannot restore; something already exists at " + originalPath + ".");
+                return;
+            }
+            Files.deleteIfExists(infoFileOf(entry));
+            DirectoryCache.invalidate(originalPath.getParent());
+            terminal.getOutput().println("Restored " + originalPath + ".");
+            return;
+        }
+
+        terminal.printError("No such entry in the trash. Use 'trash list' to see the entries.");
+    }
+
+    // Hands every trashed resource to the purger; returns right away.
+    private static void emptyTrash(Terminal terminal) throws IOException {
+        List<Path> entries = listEntries(terminal);
+        for (Path entry : entries) {
+            queueForPurge(entry);
+        }
+        terminal.getOutput().println("Emptied " + entries.size() + " trash entries; the space is freed in the background.");
+    }
+
+    // -- PURGER -----------------------------
+
+    // Renames the entry into its trash's purge folder (instant), then queues it for deletion.
+    private static void queueForPurge(Path entry) throws IOException {
+        Path trashDirectory = entry.getParent().getParent();
+        Path purgeEntry = trashDirectory.resolve(PURGE_FOLDER).resolve(entry.getFileName());
+        Files.move(entry, purgeEntry, StandardCopyOption.ATOMIC_MOVE);
+        Files.deleteIfExists(infoFileOf(entry));
+
+        startPurger();
+        PURGE_QUEUE.add(purgeEntry);
+    }
+
+    // Starts the purger thread (once); it runs at the lowest priority so it never slows the terminal down.
+    private static synchronized void startPurger() {
+        if (purgerThread != null) {
+            return;
+        }
+        purgerThread = new Thread(Trash::runPurger, "trash-purger");
+        purgerThread.setPriority(Thread.MIN_PRIORITY);
+        purgerThread.setDaemon(true);
+        purgerThread.start();
+    }
+
+    // Deletes queued entries; every so often also purges leftovers from earlier sessions.
+    private static void runPurger() {
+        queueLeftovers();
+        while (true) {
+            try {
+                Path purgeEntry = PURGE_QUEUE.poll(PURGE_SCAN_INTERVAL_MINUTES, TimeUnit.MINUTES);
+                if (purgeEntry != null) {
+                    new DirectoryDeleter().deleteTreeSequentially(purgeEntry);
+                } else {
+                    queueLeftovers();
+                }
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    // Queues anything left in the purge folders (emptied, but not deleted before an earlier session ended).
+    private static void queueLeftovers() {
+        for (Path trashDirectory : knownTrashDirectories()) {
+            try {
+                for (Path leftover : listFolder(trashDirectory.resolve(PURGE_FOLDER))) {
+                    if (!PURGE_QUEUE.contains(leftover)) {
+                        PURGE_QUEUE.add(leftover);
+                    }
+                }
+            } catch (IOException e) {
+                // The trash might have been removed; try again at the next scan.
+            }
+        }
+    }
+
+    // -- HELPER METHODS ---------------------
+
+    // Returns the trash on the resource's filesystem (making it if needed): the home trash if possible, otherwise one at
+    // the top of that filesystem.
+    private static Path trashDirectoryFor(Path resource) throws IOException {
+        Path trashDirectory = locateTrashDirectory(resource);
+        Files.createDirectories(trashDirectory.resolve(FILES_FOLDER));
+        Files.createDirectories(trashDirectory.resolve(INFO_FOLDER));
+        Files.createDirectories(trashDirectory.resolve(PURGE_FOLDER));
+        synchronized (KNOWN_TRASH_DIRECTORIES) {
+            KNOWN_TRASH_DIRECTORIES.add(trashDirectory);
+        }
+        return trashDirectory;
+    }
+
+    // Returns where the trash on the resource's filesystem is (or would be); makes nothing.
+    private static Path locateTrashDirectory(Path resource) throws IOException {
+        Path homeTrash = Paths.get(System.getProperty("user.home"), TRASH_NAME);
+        FileStore resourceStore = Files.getFileStore(resource);
+
+        Path trashDirectory;
+        if (resourceStore.equals(Files.getFileStore(homeTrash.getParent()))) {
+            trashDirectory = homeTrash;
+        } else {
+
+            // Climb up to the highest directory that is still on the resource's filesystem.
+            Path topDirectory = resource.toAbsolutePath().getParent();
+            while (topDirectory.getParent() != null && resourceStore.equals(Files.getFileStore(topDirectory.getParent()))) {
+                topDirectory = topDirectory.getParent();
+            }
+            trashDirectory = topDirectory.resolve(TRASH_NAME + "-" + System.getProperty("user.name"));
+        }
+        return trashDirectory;
+    }
+
+    // Returns the trash directories the commands look in: the home trash and the working directory's filesystem trash.
+    private static List<Path> knownTrashDirectories() {
+        synchronized (KNOWN_TRASH_DIRECTORIES) {
+            return new ArrayList<>(KNOWN_TRASH_DIRECTORIES);
+        }
+    }
+
+    // Returns every entry of the trashes this session can see. Only trashes that already exist are looked in (listing
+    // is allowed under resource safety, and may be on a filesystem that cannot be written to).
+    private static List<Path> listEntries(Terminal terminal) throws IOException {
+        for (Path resource : List.of(terminal.getWorkingDirectory().toPath(), Paths.get(System.getProperty("user.home")))) {
+            Path trashDirectory = locateTrashDirectory(resource);
+            if (Files.isDirectory(trashDirectory)) {
+                synchronized (KNOWN_TRASH_DIRECTORIES) {
+                    KNOWN_TRASH_DIRECTORIES.add(trashDirectory);
+                }
+            }
+        }
+
+        List<Path> entries = new ArrayList<>();
+        for (Path trashDirectory : knownTrashDirectories()) {
+            entries.addAll(listFolder(trashDirectory.resolve(FILES_FOLDER)));
+        }
+        entries.sort(null);
+        return entries;
+    }
+
+    private static List<Path> listFolder(Path folder) throws IOException {
+        List<Path> children = new ArrayList<>();
+        if (Files.isDirectory(folder)) {
+            try (DirectoryStream<Path> folderEntries = Files.newDirectoryStream(folder)) {
+                folderEntries.forEach(children::add);
+            }
+        }
+        return children;
+    }
+
+    private static Path infoFileOf(Path entry) {
+        return entry.getParent().resolveSibling(INFO_FOLDER).resolve(entry.getFileName() + INFO_EXTENSION);
+    }
+
+    private static Properties readInfo(Path entry) throws IOException {
+        Properties info = new Properties();
+        Path infoFile = infoFileOf(entry);
+        if (Files.exists(infoFile)) {
+            try (Reader infoReader = Files.newBufferedReader(infoFile, StandardCharsets.UTF_8)) {
+                info.load(infoReader);
+            }
+        }
+        return info;
+    }
+
+}
@@ -0,0 +1,213 @@
+package pseudobash.jmh;
+
+// == IMPORTS =======================
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+// == CLASS =======================
+// TERMINAL BENCHMARKS | The JMH version of 'benchmark suite': the command loop, lookhere, read and delete.
+//
+// Like the built-in suite, every benchmark runs real commands through a quiet pseudobash session, on fixtures made in a
+// temporary directory. JMH cannot name classes in the default package, so the session is started through reflection.
+// Build and run with: mvn -P jmh package && java -jar target/benchmarks.jar -rf json
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class TerminalBenchmarks {
+
+    // -- CONSTANT / UTILITY VARIABLES ------
+
+    // The same fixture sizes and commands as 'benchmark suite' (Benchmarks.java), so the two report comparable scores.
+    static final int DISPATCH_COMMANDS = 20_000, LISTING_FILES = 20_000;
+    static final int TREE_DIRECTORIES = 100, TREE_FILES_PER_DIRECTORY = 20;
+    static final long READ_FILE_BYTES = 32L << 20;
+    static final String[] DISPATCH_SAMPLE_COMMANDS = {
+            "whereami",
+            "print Hello there, this is a longer line of text to print",
+            "safety status",
+            "explain lookhere"
+    };
+
+    // Terminal.runEmbedded(Reader script, PrintStream output, File workingDirectory, boolean resourceSafety) -> failed commands
+    private static final MethodHandle RUN_EMBEDDED = findRunEmbedded();
+    private static final PrintStream DISCARDED_OUTPUT = new PrintStream(OutputStream.nullOutputStream());
+
+    // -- OBJECT FIELDS ---------------------
+
+    private Path fixtures;
+    private String dispatchScript;
+
+    // -- FIXTURE METHODS --------------------
+
+    @Setup(Level.Trial)
+    public void createFixtures() throws IOException {
+        fixtures = Files.createTempDirectory("pseudobash-jmh");
+
+        StringBuilder script = new StringBuilder();
+        for (int commandIndex = 0; commandIndex < DISPATCH_COMMANDS; commandIndex++) {
+            script.append(DISPATCH_SAMPLE_COMMANDS[commandIndex % DISPATCH_SAMPLE_COMMANDS.length]).append('\n');
+        }
+        dispatchScript = script.toString();
+
+        Path listingDirectory = Files.createDirectory(fixtures.resolve("listing"));
+        for (int fileIndex = 0; fileIndex < LISTING_FILES; fileIndex++) {
+            Files.createFile(listingDirectory.resolve("file-" + fileIndex + ".txt"));
+        }
+
+        writeSampleText(fixtures.resolve("large.txt"), READ_FILE_BYTES);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteFixtures() throws IOException {
+        deleteTree(fixtures);
+    }
+
+    // -- BENCHMARK METHODS ------------------
+
+    // Tokenizing and dispatching cheap commands through the command loop; the score is commands per second.
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @OperationsPerInvocation(DISPATCH_COMMANDS)
+    public int dispatch() throws Throwable {
+        return runCommands(dispatchScript, fixtures, true);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public int lookhere() throws Throwable {
+        return runCommands("lookhere listing\n", fixtures, true);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public int lookhereLong() throws Throwable {
+        return runCommands("lookhere listing -l\n", fixtures, true);
+    }
+
+    // Reading the whole large file; the score is reads per second (times READ_FILE_BYTES for the bytes per second).
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public int read() throws Throwable {
+        return runCommands("read large.txt\n", fixtures, true);
+    }
+
+    // Deleting a directory tree with resource safety off; the score is files deleted per second.
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @OperationsPerInvocation(TREE_DIRECTORIES * TREE_FILES_PER_DIRECTORY)
+    public int delete(DeletedTree tree) throws Throwable {
+        return runCommands("delete directory tree\n", tree.directory, false);
+    }
+
+    // -- HELPER METHODS ---------------------
+
+    // Runs the commands in a quiet session in the directory; throws if any of them failed (nothing would be measured).
+    private static int runCommands(String script, Path directory, boolean resourceSafety) throws Throwable {
+        int failedCommands = (int) RUN_EMBEDDED.invokeExact((Reader) new StringReader(script), DISCARDED_OUTPUT, directory.toFile(), resourceSafety);
+        if (failedCommands != 0) {
+            throw new IllegalStateException("a benchmarked command failed: " + script.lines().findFirst().orElse(""));
+        }
+        return failedCommands;
+    }
+
+    private static MethodHandle findRunEmbedded() {
+        try {
+            Method runEmbedded = Class.forName("Terminal").getDeclaredMethod("runEmbedded", Reader.class, PrintStream.class, File.class, boolean.class);
+            runEmbedded.setAccessible(true);
+            return MethodHandles.lookup().unreflect(runEmbedded);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    // Writes log-like lines until the file is about the given size (the same text as Benchmarks.writeSampleText).
+    private static void writeSampleText(Path file, long size) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            long writtenBytes = 0;
+            for (int lineNumber = 0; writtenBytes < size; lineNumber++) {
+                String line = (lineNumber % 1000 == 0)
+                        ? "2024-01-01 12:00:00 WARN found the needle " + lineNumber + " in the haystack"
+                        : "2024-01-01 12:00:00 INFO request " + lineNumber + " handled in " + (lineNumber % 97) + " ms by worker-" + (lineNumber % 8);
+                writer.write(line);
+                writer.newLine();
+                writtenBytes += line.length() + 1;
+            }
+        }
+    }
+
+    private static void deleteTree(Path root) throws IOException {
+        if (!Files.exists(root)) {
+            return;
+        }
+        try (Stream<Path> resources = Files.walk(root)) {
+            for (Path resource : (Iterable<Path>) resources.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(resource);
+            }
+        }
+    }
+
+    // -- NESTED CLASSES ---------------------
+
+    // The tree the delete benchmark removes; built again (untimed) before every invocation.
+    @State(Scope.Thread)
+    public static class DeletedTree {
+
+        Path directory;
+
+        @Setup(Level.Trial)
+        public void createDirectory() throws IOException {
+            directory = Files.createTempDirectory("pseudobash-jmh-delete");
+        }
+
+        @Setup(Level.Invocation)
+        public void buildTree() throws IOException {
+            for (int directoryIndex = 0; directoryIndex < TREE_DIRECTORIES; directoryIndex++) {
+                Path treeDirectory = Files.createDirectories(directory.resolve("tree").resolve("group-" + directoryIndex % 10).resolve("directory-" + directoryIndex));
+                for (int fileIndex = 0; fileIndex < TREE_FILES_PER_DIRECTORY; fileIndex++) {
+                    Files.writeString(treeDirectory.resolve("file-" + fileIndex + ".txt"), "benchmark file " + fileIndex);
+                }
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void deleteDirectory() throws IOException {
+            deleteTree(directory);
+        }
+    }
+
+}